@@ -13,7 +13,7 @@ Requirements:
 - numpy
 
 Usage:
-    python audio_capture.py [--device DEVICE_ID] [--sample-rate SAMPLE_RATE] [--chunk-size CHUNK_SIZE] [--ws-url WS_URL]
+    python audio_capture.py [--device DEVICE_ID] [--sample-rate SAMPLE_RATE] [--chunk-size CHUNK_SIZE] [--ws-url WS_URL] [--binary]
 """
 
 import os
@@ -30,6 +30,7 @@ import logging
 from datetime import datetime
 import uuid
 import base64
+import struct
 
 # Configure logging
 logging.basicConfig(
@@ -54,6 +55,14 @@ MAX_RECONNECT_ATTEMPTS = 5
 RECONNECT_DELAY = 5  # seconds
 last_reconnect_time = 0
 MIN_RECONNECT_INTERVAL = 10  # minimum seconds between reconnection attempts
+use_binary_frames = False
+frame_sequence = 0
+
+# Binary audio frame header (see AudioFrame.java): magic, version, encoding,
+# stream id, sequence, sample rate, channels, flags, reserved
+AUDIO_FRAME_HEADER = struct.Struct('>2sBBIIIBBH')
+AUDIO_FRAME_VERSION = 1
+AUDIO_FRAME_ENCODING_PCM_S16LE = 1
 
 # Audio parameters
 CHUNK = 1024  # Reduced from 4096 to 1024 for smaller chunks
@@ -185,6 +194,14 @@ def on_open(ws):
     # Start audio capture in a separate thread
     threading.Thread(target=capture_audio, args=(ws, client_id)).start()
 
+def build_audio_frame(pcm, stream_id, sample_rate, channels):
+    """Prefix raw PCM with the binary frame header understood by /simple-websocket."""
+    global frame_sequence
+    frame_sequence += 1
+    header = AUDIO_FRAME_HEADER.pack(b'PQ', AUDIO_FRAME_VERSION, AUDIO_FRAME_ENCODING_PCM_S16LE,
+                                     stream_id & 0xFFFFFFFF, frame_sequence, sample_rate, channels, 0, 0)
+    return header + pcm
+
 def capture_audio(ws, client_id):
     """Capture audio from the specified device and send it through WebSocket."""
     try:
@@ -263,19 +280,24 @@ def capture_audio(ws, client_id):
                                 # Combine all audio chunks
                                 complete_audio = b''.join(audio_buffer)
                                 
-                                # Convert to base64
-                                audio_base64 = base64.b64encode(complete_audio).decode('utf-8')
-                                
-                                # Create message with complete speech segment
-                                message = {
-                                    "clientId": client_id,
-                                    "type": "speech",
-                                    "audioData": audio_base64,
-                                    "duration": speech_duration
-                                }
-                                
-                                # Send the message
-                                ws.send(json.dumps(message))
+                                if use_binary_frames:
+                                    # Send raw PCM behind a small binary header
+                                    frame = build_audio_frame(complete_audio, int(speech_start_time * 1000), DEFAULT_SAMPLE_RATE, 1)
+                                    ws.send(frame, opcode=websocket.ABNF.OPCODE_BINARY)
+                                else:
+                                    # Convert to base64
+                                    audio_base64 = base64.b64encode(complete_audio).decode('utf-8')
+                                    
+                                    # Create message with complete speech segment
+                                    message = {
+                                        "clientId": client_id,
+                                        "type": "speech",
+                                        "audioData": audio_base64,
+                                        "duration": speech_duration
+                                    }
+                                    
+                                    # Send the message
+                                    ws.send(json.dumps(message))
                                 print(f"📤 Sent speech segment ({len(audio_buffer)} chunks, {len(complete_audio)} bytes)")
                             else:
                                 print(f"❌ Speech too short ({speech_duration:.2f}s), ignoring")
@@ -561,7 +583,7 @@ def reconnect_websocket():
         return False
 
 def main():
-    global device_id, client_id, ws, is_connected, last_reconnect_time
+    global device_id, client_id, ws, is_connected, last_reconnect_time, use_binary_frames
     
     parser = argparse.ArgumentParser(description="Audio Capture for PhantomQuery")
     parser.add_argument("--device", type=int, help="Input device ID")
@@ -569,7 +591,9 @@ def main():
     parser.add_argument("--chunk-size", type=int, default=DEFAULT_CHUNK_SIZE, help="Chunk size")
     parser.add_argument("--ws-url", type=str, default=DEFAULT_WS_URL, help="WebSocket URL")
     parser.add_argument("--list-devices", action="store_true", help="List available audio devices")
+    parser.add_argument("--binary", action="store_true", help="Send speech as binary PCM frames instead of base64 JSON")
     args = parser.parse_args()
+    use_binary_frames = args.binary
     
     if args.list_devices:
         list_audio_devices()
@@ -0,0 +1,422 @@
+package com.phantomquery.archive;
+
+import com.phantomquery.model.ConversationSummary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only archive of whole conversations.
+ *
+ * Each conversation is one deflate-compressed record, appended to the current segment file
+ * ({@code segment-000001.seg}, ...) until it reaches {@code segmentBytes}. Records are framed as
+ * compressed length, uncompressed length and CRC32, followed by the data. A separate append-only
+ * index file records where each conversation's latest record lives, with the fields the
+ * conversation list needs; removals are appended as tombstones. The index is replayed into memory
+ * on open, so lookups and list queries never touch the segments. A crash can at most leave a
+ * partial index record at the end, which is cut off on the next open, or a segment record
+ * without an index entry, which is never read.
+ *
+ * Records are read through read-only memory mappings of the segment files, one per segment,
+ * remapped when the current segment has grown past its mapping. Appends and index updates are
+ * serialized; reads decompress outside the lock.
+ */
+public class ArchiveStore implements Closeable {
+
+    private static final String INDEX_FILE = "archive.idx";
+    private static final byte ENTRY = 1;
+    private static final byte REMOVAL = 2;
+    // Compressed length, uncompressed length, CRC32 of the compressed bytes
+    private static final int RECORD_HEADER_BYTES = 12;
+
+    // Newest first, ties broken by id as in the conversation list queries
+    private static final Comparator<ConversationSummary> NEWEST_FIRST =
+            Comparator.comparing(ConversationSummary::updatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                    .thenComparing(ConversationSummary::id).reversed();
+
+    private record Entry(ConversationSummary summary, int segment, long offset, int length) {
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    // Guarded by this
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<ConversationSummary> byRecency = new TreeSet<>(NEWEST_FIRST);
+    private final Map<Integer, MappedByteBuffer> mappings = new HashMap<>();
+    private final FileChannel index;
+    private FileChannel segment;
+    private int segmentNumber;
+    private long segmentSize;
+    private long liveBytes;
+
+    public ArchiveStore(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        // Offsets into a mapping are ints
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE / 2);
+        Files.createDirectories(directory);
+        this.index = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayIndex();
+
+        int latest = 1;
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("segment-") && name.endsWith(".seg")) {
+                    latest = Math.max(latest, Integer.parseInt(name.substring(8, name.length() - 4)));
+                }
+            }
+        }
+        openSegment(latest);
+    }
+
+    public synchronized boolean contains(String conversationId) {
+        return entries.containsKey(conversationId);
+    }
+
+    /**
+     * Stores the conversation, replacing any earlier record of it, and forces both the record and
+     * its index entry to disk before returning.
+     */
+    public synchronized void put(ArchivedConversation conversation) throws IOException {
+        byte[] record = encodeRecord(conversation);
+        if (segmentSize > 0 && segmentSize + record.length > segmentBytes) {
+            segment.close();
+            openSegment(segmentNumber + 1);
+        }
+        long offset = segmentSize;
+        writeFully(segment, ByteBuffer.wrap(record), offset);
+        segment.force(false);
+        segmentSize += record.length;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ENTRY);
+        writeString(out, conversation.id());
+        writeString(out, conversation.title());
+        writeTime(out, conversation.createdAt());
+        writeTime(out, conversation.updatedAt());
+        out.writeInt(segmentNumber);
+        out.writeLong(offset);
+        out.writeInt(record.length);
+        appendIndex(bytes.toByteArray());
+
+        apply(new Entry(conversation.toSummary(), segmentNumber, offset, record.length));
+    }
+
+    /**
+     * The archived conversation, or null when it is not archived.
+     */
+    public ArchivedConversation get(String conversationId) throws IOException {
+        ByteBuffer record;
+        synchronized (this) {
+            Entry entry = entries.get(conversationId);
+            if (entry == null) {
+                return null;
+            }
+            record = mapping(entry.segment(), entry.offset() + entry.length()).duplicate();
+            record.position((int) entry.offset()).limit((int) (entry.offset() + entry.length()));
+        }
+        return decodeRecord(record.slice());
+    }
+
+    /**
+     * Forgets the conversation. Its record stays in the segment file as garbage.
+     */
+    public synchronized boolean remove(String conversationId) throws IOException {
+        if (!entries.containsKey(conversationId)) {
+            return false;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REMOVAL);
+        writeString(out, conversationId);
+        appendIndex(bytes.toByteArray());
+        unapply(conversationId);
+        return true;
+    }
+
+    /**
+     * Up to {@code limit} archived conversations that come after the given keyset position in
+     * the conversation list order, or from the top when {@code id} is null.
+     */
+    public synchronized List<ConversationSummary> summariesBefore(LocalDateTime updatedAt, String id, int limit) {
+        Iterable<ConversationSummary> tail = id == null ? byRecency
+                : byRecency.tailSet(new ConversationSummary(id, null, null, updatedAt), false);
+        List<ConversationSummary> result = new ArrayList<>(Math.min(limit, entries.size()));
+        for (ConversationSummary summary : tail) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(summary);
+        }
+        return result;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("conversations", entries.size());
+        stats.put("segments", segmentNumber);
+        stats.put("liveBytes", liveBytes);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mappings.clear();
+        segment.close();
+        index.close();
+    }
+
+    private void openSegment(int number) throws IOException {
+        segmentNumber = number;
+        segment = FileChannel.open(directory.resolve(String.format("segment-%06d.seg", number)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentSize = segment.size();
+    }
+
+    private MappedByteBuffer mapping(int number, long end) throws IOException {
+        MappedByteBuffer mapped = mappings.get(number);
+        if (mapped == null || mapped.capacity() < end) {
+            if (number == segmentNumber) {
+                mapped = segment.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+            } else {
+                try (FileChannel channel = FileChannel.open(
+                        directory.resolve(String.format("segment-%06d.seg", number)), StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            mappings.put(number, mapped);
+        }
+        return mapped;
+    }
+
+    private void appendIndex(byte[] payload) throws IOException {
+        ByteBuffer framed = ByteBuffer.allocate(4 + payload.length);
+        framed.putInt(payload.length).put(payload).flip();
+        writeFully(index, framed, index.size());
+        index.force(false);
+    }
+
+    private void replayIndex() throws IOException {
+        long size = index.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (index.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        long valid = 0;
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length < 0 || buffer.remaining() < length) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = in.readByte();
+                String id = readString(in);
+                if (type == ENTRY) {
+                    String title = readString(in);
+                    LocalDateTime createdAt = readTime(in);
+                    LocalDateTime updatedAt = readTime(in);
+                    apply(new Entry(new ConversationSummary(id, title, createdAt, updatedAt),
+                            in.readInt(), in.readLong(), in.readInt()));
+                } else {
+                    unapply(id);
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            valid = buffer.position();
+        }
+        if (valid < size) {
+            // A record cut short by a crash
+            index.truncate(valid);
+        }
+    }
+
+    private void apply(Entry entry) {
+        unapply(entry.summary().id());
+        entries.put(entry.summary().id(), entry);
+        byRecency.add(entry.summary());
+        liveBytes += entry.length();
+    }
+
+    private void unapply(String conversationId) {
+        Entry previous = entries.remove(conversationId);
+        if (previous != null) {
+            byRecency.remove(previous.summary());
+            liveBytes -= previous.length();
+        }
+    }
+
+    private static byte[] encodeRecord(ArchivedConversation conversation) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        writeString(out, conversation.id());
+        writeString(out, conversation.title());
+        writeTime(out, conversation.createdAt());
+        writeTime(out, conversation.updatedAt());
+        writeString(out, conversation.summary());
+        writeTime(out, conversation.summaryThrough());
+        writeInteger(out, conversation.summaryTokenCount());
+        out.writeInt(conversation.messages().size());
+        for (ArchivedConversation.ArchivedMessage message : conversation.messages()) {
+            writeString(out, message.id());
+            writeString(out, message.role());
+            writeString(out, message.content());
+            writeTime(out, message.timestamp());
+            writeInteger(out, message.tokenCount());
+        }
+        byte[] uncompressed = raw.toByteArray();
+
+        Deflater deflater = new Deflater();
+        deflater.setInput(uncompressed);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 4 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        byte[] data = compressed.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + data.length);
+        record.putInt(data.length).putInt(uncompressed.length).putInt((int) crc.getValue()).put(data);
+        return record.array();
+    }
+
+    private static ArchivedConversation decodeRecord(ByteBuffer record) throws IOException {
+        int compressedLength = record.getInt();
+        int uncompressedLength = record.getInt();
+        int checksum = record.getInt();
+        ByteBuffer data = record.slice().limit(compressedLength);
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt archive record");
+        }
+
+        byte[] uncompressed = new byte[uncompressedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int inflated = 0;
+            while (inflated < uncompressedLength && !inflater.finished()) {
+                int n = inflater.inflate(uncompressed, inflated, uncompressedLength - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated archive record");
+                }
+                inflated += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive record", e);
+        } finally {
+            inflater.end();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(uncompressed));
+        String id = readString(in);
+        String title = readString(in);
+        LocalDateTime createdAt = readTime(in);
+        LocalDateTime updatedAt = readTime(in);
+        String summary = readString(in);
+        LocalDateTime summaryThrough = readTime(in);
+        Integer summaryTokenCount = readInteger(in);
+        int count = in.readInt();
+        List<ArchivedConversation.ArchivedMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new ArchivedConversation.ArchivedMessage(readString(in), readString(in), readString(in),
+                    readTime(in), readInteger(in)));
+        }
+        return new ArchivedConversation(id, title, createdAt, updatedAt, summary, summaryThrough,
+                summaryTokenCount, messages);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    // Nullable values are written as a presence flag followed by the value
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long seconds = in.readLong();
+        return LocalDateTime.ofEpochSecond(seconds, in.readInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+}
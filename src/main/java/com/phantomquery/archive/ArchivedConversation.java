@@ -0,0 +1,62 @@
+package com.phantomquery.archive;
+
+import com.phantomquery.model.Conversation;
+import com.phantomquery.model.ConversationSummary;
+import com.phantomquery.model.Message;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A conversation and all of its messages as stored in an archive segment.
+ */
+public record ArchivedConversation(String id, String title, LocalDateTime createdAt, LocalDateTime updatedAt,
+                                   String summary, LocalDateTime summaryThrough, Integer summaryTokenCount,
+                                   List<ArchivedMessage> messages) {
+
+    public record ArchivedMessage(String id, String role, String content, LocalDateTime timestamp, Integer tokenCount) {
+    }
+
+    /**
+     * @param messages the conversation's messages, oldest first
+     */
+    public static ArchivedConversation of(Conversation conversation, List<Message> messages) {
+        List<ArchivedMessage> archived = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            archived.add(new ArchivedMessage(message.getId(), message.getRole(), message.getContent(),
+                    message.getTimestamp(), message.getTokenCount()));
+        }
+        return new ArchivedConversation(conversation.getId(), conversation.getTitle(), conversation.getCreatedAt(),
+                conversation.getUpdatedAt(), conversation.getSummary(), conversation.getSummaryThrough(),
+                conversation.getSummaryTokenCount(), archived);
+    }
+
+    public ConversationSummary toSummary() {
+        return new ConversationSummary(id, title, createdAt, updatedAt);
+    }
+
+    /**
+     * A detached entity with its messages, shaped like one loaded from the database.
+     */
+    public Conversation toConversation() {
+        Conversation conversation = new Conversation(title);
+        conversation.setId(id);
+        conversation.setCreatedAt(createdAt);
+        conversation.setUpdatedAt(updatedAt);
+        conversation.setSummary(summary);
+        conversation.setSummaryThrough(summaryThrough);
+        conversation.setSummaryTokenCount(summaryTokenCount);
+        List<Message> entities = new ArrayList<>(messages.size());
+        for (ArchivedMessage archived : messages) {
+            Message message = new Message(archived.content(), archived.role(), id);
+            message.setId(archived.id());
+            message.setTimestamp(archived.timestamp());
+            message.setTokenCount(archived.tokenCount());
+            message.setConversation(conversation);
+            entities.add(message);
+        }
+        conversation.setMessages(entities);
+        return conversation;
+    }
+}
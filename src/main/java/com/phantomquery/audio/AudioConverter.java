@@ -0,0 +1,301 @@
+package com.phantomquery.audio;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts linear PCM of any common layout to the 16 kHz mono 16-bit little-endian audio the
+ * recognizers expect: channels are averaged, samples are normalized from 8, 16, 24 or 32 bits, and
+ * the sample rate is changed with a polyphase windowed-sinc filter. The filter runs at the rational
+ * ratio between the two rates (160/441 for 44.1 kHz), so no intermediate upsampled signal is built,
+ * and its cutoff sits just below the lower Nyquist frequency to avoid aliasing when downsampling.
+ *
+ * Instances are streaming: filter history and partial input frames carry over between calls, so a
+ * capture can be converted buffer by buffer without seams. All working memory is allocated by the
+ * constructor and filter tables are shared between instances. Not thread-safe.
+ */
+public class AudioConverter {
+
+    public static final int TARGET_SAMPLE_RATE = 16000;
+    public static final AudioFormat TARGET_FORMAT = new AudioFormat(TARGET_SAMPLE_RATE, 16, 1, true, false);
+
+    // Sinc zero crossings kept on each side of the filter center
+    private static final int ZERO_CROSSINGS = 10;
+    // Cutoff as a fraction of the lower Nyquist frequency
+    private static final double ROLLOFF = 0.95;
+    // Input frames decoded per filter pass
+    private static final int BLOCK_FRAMES = 4096;
+
+    private static final Map<Long, PolyphaseFilter> FILTERS = new ConcurrentHashMap<>();
+
+    private final AudioFormat inputFormat;
+    private final boolean passthrough;
+    private final int frameSize;
+    private final int channels;
+    private final int bytesPerSample;
+    private final boolean bigEndian;
+    private final boolean unsigned;
+    private final float sampleScale;
+
+    private final PolyphaseFilter filter;
+    // Filter history (taps - 1 samples) followed by the current block of mono input
+    private final float[] work;
+    // Bytes of an input frame split across calls
+    private final byte[] carry;
+    private int carryLength;
+
+    // Index in work of the newest input sample under the filter for the next output sample
+    private int position;
+    // Sub-sample phase of the next output sample, in 1/upFactor input samples
+    private int phase;
+
+    public AudioConverter(AudioFormat inputFormat) {
+        if (!canConvert(inputFormat)) {
+            throw new IllegalArgumentException("Unsupported audio format for conversion: " + inputFormat);
+        }
+        this.inputFormat = inputFormat;
+        this.passthrough = isTargetFormat(inputFormat);
+        this.channels = inputFormat.getChannels();
+        this.bytesPerSample = inputFormat.getSampleSizeInBits() / 8;
+        this.frameSize = channels * bytesPerSample;
+        this.bigEndian = inputFormat.isBigEndian();
+        this.unsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals(inputFormat.getEncoding());
+        this.sampleScale = 1f / (1L << (inputFormat.getSampleSizeInBits() - 1));
+
+        int inputRate = Math.round(inputFormat.getSampleRate());
+        int divisor = gcd(inputRate, TARGET_SAMPLE_RATE);
+        int upFactor = TARGET_SAMPLE_RATE / divisor;
+        int downFactor = inputRate / divisor;
+        this.filter = passthrough ? null
+                : FILTERS.computeIfAbsent(((long) upFactor << 32) | downFactor, key -> new PolyphaseFilter(upFactor, downFactor));
+        this.work = passthrough ? new float[0] : new float[filter.taps - 1 + BLOCK_FRAMES];
+        this.carry = new byte[frameSize];
+        reset();
+    }
+
+    /**
+     * Whether the format is linear PCM this class can read.
+     */
+    public static boolean canConvert(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+        boolean unsignedByte = AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding()) && bits == 8;
+        return (signed && (bits == 8 || bits == 16 || bits == 24 || bits == 32) || unsignedByte)
+                && format.getChannels() > 0
+                && format.getSampleRate() >= 1000;
+    }
+
+    public static boolean isTargetFormat(AudioFormat format) {
+        return Math.round(format.getSampleRate()) == TARGET_SAMPLE_RATE
+                && format.getChannels() == 1
+                && format.getSampleSizeInBits() == 16
+                && AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                && !format.isBigEndian();
+    }
+
+    /**
+     * Converts one complete clip. Audio already in the target format is returned as is; anything
+     * else is converted in bounded chunks into a single output array that is wrapped, not copied.
+     */
+    public static ByteString toTargetFormat(ByteString audio, AudioFormat format) {
+        if (isTargetFormat(format)) {
+            return audio;
+        }
+        AudioConverter converter = new AudioConverter(format);
+        byte[] output = new byte[converter.maxOutputBytes(audio.size())];
+        byte[] chunk = new byte[Math.min(audio.size(), BLOCK_FRAMES * converter.frameSize)];
+        int written = 0;
+        for (int offset = 0; offset < audio.size(); offset += chunk.length) {
+            int length = Math.min(chunk.length, audio.size() - offset);
+            audio.copyTo(chunk, offset, 0, length);
+            written += converter.convert(chunk, 0, length, output, written);
+        }
+        return UnsafeByteOperations.unsafeWrap(output, 0, written);
+    }
+
+    public AudioFormat getInputFormat() {
+        return inputFormat;
+    }
+
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+
+    /**
+     * Upper bound of the bytes {@link #convert} writes for {@code inputBytes} of input.
+     */
+    public int maxOutputBytes(int inputBytes) {
+        if (passthrough) {
+            return inputBytes;
+        }
+        long frames = (inputBytes + carryLength) / frameSize;
+        long samples = (frames * filter.upFactor + filter.downFactor - 1) / filter.downFactor + 1;
+        return (int) (samples * 2);
+    }
+
+    /**
+     * Converts {@code length} bytes of input and writes the resulting target-format audio to
+     * {@code output} starting at {@code outputOffset}, returning the number of bytes written. The
+     * output array must have room for {@link #maxOutputBytes} bytes.
+     */
+    public int convert(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+        if (passthrough) {
+            System.arraycopy(input, offset, output, outputOffset, length);
+            return length;
+        }
+        int written = 0;
+        if (carryLength > 0) {
+            int needed = Math.min(frameSize - carryLength, length);
+            System.arraycopy(input, offset, carry, carryLength, needed);
+            carryLength += needed;
+            offset += needed;
+            length -= needed;
+            if (carryLength < frameSize) {
+                return 0;
+            }
+            written += process(carry, 0, 1, output, outputOffset);
+            carryLength = 0;
+        }
+        int frames = length / frameSize;
+        while (frames > 0) {
+            int block = Math.min(frames, BLOCK_FRAMES);
+            written += process(input, offset, block, output, outputOffset + written);
+            offset += block * frameSize;
+            length -= block * frameSize;
+            frames -= block;
+        }
+        if (length > 0) {
+            System.arraycopy(input, offset, carry, 0, length);
+            carryLength = length;
+        }
+        return written;
+    }
+
+    /**
+     * Forgets filter history and partial frames, e.g. before an unrelated clip.
+     */
+    public void reset() {
+        Arrays.fill(work, 0f);
+        carryLength = 0;
+        position = passthrough ? 0 : filter.taps - 1;
+        phase = 0;
+    }
+
+    private int process(byte[] input, int offset, int frames, byte[] output, int outputOffset) {
+        int history = filter.taps - 1;
+        for (int frame = 0; frame < frames; frame++) {
+            int frameOffset = offset + frame * frameSize;
+            float sum = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                sum += decode(input, frameOffset + channel * bytesPerSample);
+            }
+            work[history + frame] = sum / channels;
+        }
+
+        int end = history + frames;
+        int taps = filter.taps;
+        float[] coefficients = filter.coefficients;
+        int out = outputOffset;
+        while (position < end) {
+            int base = phase * taps;
+            float acc = 0;
+            for (int k = 0; k < taps; k++) {
+                acc += coefficients[base + k] * work[position - k];
+            }
+            int sample = Math.round(acc * 32767f);
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            output[out++] = (byte) sample;
+            output[out++] = (byte) (sample >> 8);
+
+            phase += filter.downFactor;
+            position += phase / filter.upFactor;
+            phase %= filter.upFactor;
+        }
+
+        // Keep the newest samples as history for the next block
+        position -= frames;
+        System.arraycopy(work, frames, work, 0, history);
+        return out - outputOffset;
+    }
+
+    private float decode(byte[] input, int index) {
+        if (unsigned) {
+            return ((input[index] & 0xff) - 128) * sampleScale;
+        }
+        int value;
+        if (bigEndian) {
+            value = input[index];
+            for (int i = 1; i < bytesPerSample; i++) {
+                value = (value << 8) | (input[index + i] & 0xff);
+            }
+        } else {
+            value = input[index + bytesPerSample - 1];
+            for (int i = bytesPerSample - 2; i >= 0; i--) {
+                value = (value << 8) | (input[index + i] & 0xff);
+            }
+        }
+        return value * sampleScale;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Blackman-windowed sinc low-pass, split into {@code upFactor} phases of {@code taps}
+     * coefficients. Phase p holds the filter sampled at offsets p/upFactor + k input samples from
+     * the output instant; every phase is normalized to unity DC gain.
+     */
+    private static final class PolyphaseFilter {
+        final int upFactor;
+        final int downFactor;
+        final int taps;
+        final float[] coefficients;
+
+        PolyphaseFilter(int upFactor, int downFactor) {
+            this.upFactor = upFactor;
+            this.downFactor = downFactor;
+            // Cutoff in cycles per input sample
+            double cutoff = 0.5 * ROLLOFF * Math.min(1.0, (double) upFactor / downFactor);
+            int halfWidth = (int) Math.ceil(ZERO_CROSSINGS / (2 * cutoff));
+            this.taps = 2 * halfWidth + 1;
+            this.coefficients = new float[upFactor * taps];
+
+            for (int p = 0; p < upFactor; p++) {
+                double sum = 0;
+                for (int k = 0; k < taps; k++) {
+                    double x = (double) p / upFactor + k - halfWidth;
+                    double u = x / (halfWidth + 1);
+                    double window = 0.42 + 0.5 * Math.cos(Math.PI * u) + 0.08 * Math.cos(2 * Math.PI * u);
+                    double value = 2 * cutoff * sinc(2 * cutoff * x) * window;
+                    coefficients[p * taps + k] = (float) value;
+                    sum += value;
+                }
+                for (int k = 0; k < taps; k++) {
+                    coefficients[p * taps + k] /= (float) sum;
+                }
+            }
+        }
+
+        private static double sinc(double x) {
+            if (Math.abs(x) < 1e-9) {
+                return 1.0;
+            }
+            return Math.sin(Math.PI * x) / (Math.PI * x);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.phantomquery.audio;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Bounded FIFO of recently streamed audio chunks, addressed by absolute byte offset within a
+ * session. Chunks are dropped once the recognizer has acknowledged them (a final result ended
+ * after them) or when the byte cap is exceeded. Chunks are kept as the same immutable ByteStrings
+ * that were sent, so replaying them copies nothing.
+ */
+public class AudioReplayBuffer {
+
+    private final long capacityBytes;
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    private long bufferedBytes;
+
+    public AudioReplayBuffer(long capacityBytes) {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("capacityBytes must be positive");
+        }
+        this.capacityBytes = capacityBytes;
+    }
+
+    public void append(long startOffset, ByteString audio) {
+        if (audio.isEmpty()) {
+            return;
+        }
+        chunks.addLast(new Chunk(startOffset, audio));
+        bufferedBytes += audio.size();
+        while (bufferedBytes > capacityBytes && chunks.size() > 1) {
+            bufferedBytes -= chunks.removeFirst().audio.size();
+        }
+    }
+
+    /**
+     * Drops every chunk that ends at or before the given offset.
+     */
+    public void acknowledge(long offset) {
+        Iterator<Chunk> iterator = chunks.iterator();
+        while (iterator.hasNext()) {
+            Chunk chunk = iterator.next();
+            if (chunk.startOffset + chunk.audio.size() > offset) {
+                break;
+            }
+            bufferedBytes -= chunk.audio.size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Offset of the oldest buffered byte, or {@code fallback} when nothing is buffered.
+     */
+    public long firstOffset(long fallback) {
+        Chunk first = chunks.peekFirst();
+        return first != null ? first.startOffset : fallback;
+    }
+
+    public void replay(Consumer<ByteString> sink) {
+        for (Chunk chunk : chunks) {
+            sink.accept(chunk.audio);
+        }
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public void clear() {
+        chunks.clear();
+        bufferedBytes = 0;
+    }
+
+    private static final class Chunk {
+        final long startOffset;
+        final ByteString audio;
+
+        Chunk(long startOffset, ByteString audio) {
+            this.startOffset = startOffset;
+            this.audio = audio;
+        }
+    }
+}
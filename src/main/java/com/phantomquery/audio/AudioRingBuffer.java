@@ -0,0 +1,69 @@
+package com.phantomquery.audio;
+
+/**
+ * Fixed-capacity circular store for the most recent captured audio. One array is allocated up
+ * front and overwritten oldest-first, so memory stays the same however long a capture runs.
+ * Writes come from the capture thread and reads from request threads; both are synchronized and
+ * only hold the lock for array copies.
+ */
+public class AudioRingBuffer {
+
+    private final byte[] buffer;
+    // Alignment for reads, so a window never starts in the middle of a sample frame
+    private final int frameSize;
+    // Total bytes ever written; the write position is this modulo the capacity
+    private long written;
+
+    public AudioRingBuffer(int capacityBytes, int frameSize) {
+        if (capacityBytes < frameSize || frameSize <= 0) {
+            throw new IllegalArgumentException("capacityBytes must hold at least one frame");
+        }
+        this.frameSize = frameSize;
+        this.buffer = new byte[capacityBytes - capacityBytes % frameSize];
+    }
+
+    public synchronized void write(byte[] data, int offset, int length) {
+        if (length >= buffer.length) {
+            // Only the tail survives anyway
+            offset += length - buffer.length;
+            written += length - buffer.length;
+            length = buffer.length;
+        }
+        int position = (int) (written % buffer.length);
+        int first = Math.min(length, buffer.length - position);
+        System.arraycopy(data, offset, buffer, position, first);
+        System.arraycopy(data, offset + first, buffer, 0, length - first);
+        written += length;
+    }
+
+    /**
+     * Copies out the newest {@code maxBytes} bytes (rounded down to whole frames), oldest first.
+     */
+    public synchronized byte[] readLatest(int maxBytes) {
+        int available = (int) Math.min(written, buffer.length);
+        int length = Math.min(Math.max(maxBytes, 0), available);
+        length -= length % frameSize;
+        byte[] result = new byte[length];
+        int start = (int) ((written - length) % buffer.length);
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(buffer, start, result, 0, first);
+        System.arraycopy(buffer, 0, result, first, length - first);
+        return result;
+    }
+
+    public synchronized int getRetainedBytes() {
+        return (int) Math.min(written, buffer.length);
+    }
+
+    public synchronized long getTotalBytesWritten() {
+        return written;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    public synchronized void clear() {
+        written = 0;
+    }
+}
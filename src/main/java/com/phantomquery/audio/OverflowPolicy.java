@@ -0,0 +1,12 @@
+package com.phantomquery.audio;
+
+/**
+ * What a bounded audio queue does when its consumer falls behind. The producer (usually the
+ * capture thread) never blocks either way.
+ */
+public enum OverflowPolicy {
+    /** Discard the oldest queued item to make room; favors the most recent audio. */
+    DROP_OLDEST,
+    /** Discard the item being added; keeps what is already queued. */
+    DROP_NEWEST
+}
@@ -0,0 +1,120 @@
+package com.phantomquery.audio;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the decoded PCM of one utterance in blocks borrowed from a {@link PcmBufferPool}.
+ * Appends are all-or-nothing and refused once the accumulator's own cap or the pool's global cap
+ * would be exceeded. Blocks go back to the pool on {@link #release()}. Not thread-safe; one per
+ * session, and threads sharing one synchronize on it.
+ */
+public class PcmAccumulator {
+
+    private final PcmBufferPool pool;
+    private final int maxBytes;
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private int size;
+
+    PcmAccumulator(PcmBufferPool pool, int maxBytes) {
+        this.pool = pool;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Appends {@code length} bytes, or nothing if that would break a cap.
+     *
+     * @return whether the audio was appended
+     */
+    public boolean append(byte[] data, int offset, int length) {
+        if (size + length > maxBytes) {
+            return false;
+        }
+        int blockBytes = pool.getBlockBytes();
+        int free = blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).remaining();
+        int needed = length > free ? (length - free + blockBytes - 1) / blockBytes : 0;
+        int existing = blocks.size();
+        for (int i = 0; i < needed; i++) {
+            ByteBuffer block = pool.acquire();
+            if (block == null) {
+                // Give back what this append took
+                while (blocks.size() > existing) {
+                    pool.release(blocks.remove(blocks.size() - 1));
+                }
+                return false;
+            }
+            blocks.add(block);
+        }
+
+        int index = Math.max(0, existing - 1);
+        while (length > 0) {
+            ByteBuffer block = blocks.get(index);
+            int chunk = Math.min(length, block.remaining());
+            block.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            size += chunk;
+            index++;
+        }
+        return true;
+    }
+
+    public boolean append(byte[] data) {
+        return append(data, 0, data.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The accumulated audio as one contiguous ByteString, copied once.
+     */
+    public ByteString toByteString() {
+        byte[] audio = new byte[size];
+        int position = 0;
+        for (ByteBuffer block : blocks) {
+            int length = block.position();
+            block.get(0, audio, position, length);
+            position += length;
+        }
+        return UnsafeByteOperations.unsafeWrap(audio);
+    }
+
+    /**
+     * Bytes {@code [from, to)} of the accumulated audio as a ByteString, copied once.
+     */
+    public ByteString copy(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") outside 0.." + size);
+        }
+        byte[] audio = new byte[to - from];
+        int blockBytes = pool.getBlockBytes();
+        int position = from;
+        while (position < to) {
+            int length = Math.min(to - position, blockBytes - position % blockBytes);
+            blocks.get(position / blockBytes).get(position % blockBytes, audio, position - from, length);
+            position += length;
+        }
+        return UnsafeByteOperations.unsafeWrap(audio);
+    }
+
+    /**
+     * Empties the accumulator and returns its blocks to the pool.
+     */
+    public void release() {
+        for (ByteBuffer block : blocks) {
+            pool.release(block);
+        }
+        blocks.clear();
+        size = 0;
+    }
+}
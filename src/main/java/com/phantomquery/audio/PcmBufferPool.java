@@ -0,0 +1,88 @@
+package com.phantomquery.audio;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared slab of fixed-size audio blocks for {@link PcmAccumulator}s. Blocks are allocated on
+ * first use, returned on release and reused afterwards, and the number in circulation is capped,
+ * so audio buffering for all sessions together never exceeds {@code maxTotalBytes} however many
+ * clients connect. Blocks can be direct buffers to keep large utterances off the heap. Thread-safe.
+ */
+public class PcmBufferPool {
+
+    private final int blockBytes;
+    private final int maxBlocks;
+    private final int maxAccumulatorBytes;
+    private final boolean direct;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger blocksInUse = new AtomicInteger();
+    private final AtomicInteger blocksAllocated = new AtomicInteger();
+    private final AtomicLong rejectedBlocks = new AtomicLong();
+
+    public PcmBufferPool(int blockBytes, long maxTotalBytes, int maxAccumulatorBytes, boolean direct) {
+        if (blockBytes <= 0 || maxTotalBytes < blockBytes) {
+            throw new IllegalArgumentException("maxTotalBytes must hold at least one block");
+        }
+        this.blockBytes = blockBytes;
+        this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, maxTotalBytes / blockBytes);
+        this.maxAccumulatorBytes = maxAccumulatorBytes;
+        this.direct = direct;
+    }
+
+    /**
+     * A new, empty accumulator limited to {@code maxAccumulatorBytes}.
+     */
+    public PcmAccumulator newAccumulator() {
+        return new PcmAccumulator(this, maxAccumulatorBytes);
+    }
+
+    public int getBlockBytes() {
+        return blockBytes;
+    }
+
+    /**
+     * Takes a cleared block, or returns null when the global cap is reached.
+     */
+    ByteBuffer acquire() {
+        while (true) {
+            int used = blocksInUse.get();
+            if (used >= maxBlocks) {
+                rejectedBlocks.incrementAndGet();
+                return null;
+            }
+            if (blocksInUse.compareAndSet(used, used + 1)) {
+                break;
+            }
+        }
+        ByteBuffer block = freeBlocks.poll();
+        if (block == null) {
+            blocksAllocated.incrementAndGet();
+            block = direct ? ByteBuffer.allocateDirect(blockBytes) : ByteBuffer.allocate(blockBytes);
+        }
+        block.clear();
+        return block;
+    }
+
+    void release(ByteBuffer block) {
+        freeBlocks.offer(block);
+        blocksInUse.decrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("blockBytes", blockBytes);
+        stats.put("blocksInUse", blocksInUse.get());
+        stats.put("blocksAllocated", blocksAllocated.get());
+        stats.put("maxBlocks", maxBlocks);
+        stats.put("maxAccumulatorBytes", maxAccumulatorBytes);
+        stats.put("rejectedBlocks", rejectedBlocks.get());
+        stats.put("direct", direct);
+        return stats;
+    }
+}
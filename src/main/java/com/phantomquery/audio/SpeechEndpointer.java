@@ -0,0 +1,246 @@
+package com.phantomquery.audio;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+/**
+ * Cuts a continuous PCM stream into utterances. Audio is analyzed in fixed frames by a
+ * {@link VoiceActivityDetector}; an utterance starts after {@code minSpeechMs} of consecutive
+ * speech (including {@code preRollMs} of audio from before the onset, so soft word starts are not
+ * clipped) and ends after {@code endSilenceMs} of silence, keeping {@code hangoverMs} of the
+ * trailing silence. Silence between utterances is discarded.
+ *
+ * All buffers are allocated up front; feeding audio allocates nothing. The utterance buffer passed
+ * to the listener is reused afterwards. Not thread-safe; intended for a single capture thread.
+ */
+public class SpeechEndpointer {
+
+    @FunctionalInterface
+    public interface SegmentListener {
+        /**
+         * Receives one utterance in {@code audio[0, length)}. The array is reused once this
+         * returns, so copy whatever has to outlive the call.
+         */
+        void onSegment(byte[] audio, int length);
+    }
+
+    /**
+     * Byte range {@code [start, end)} of a buffer that contains speech.
+     */
+    public record SpeechSpan(int start, int end) {
+        public int length() {
+            return end - start;
+        }
+    }
+
+    private final AudioFormat format;
+    private final VoiceActivityDetector detector;
+    private final SegmentListener listener;
+    private final int frameBytes;
+    private final int minSpeechFrames;
+    private final int endSilenceFrames;
+    private final int hangoverBytes;
+
+    // Partially filled analysis frame
+    private final byte[] frame;
+    private final ByteBuffer frameView;
+    private int frameFill;
+
+    // Ring of the most recent frames while no utterance is active
+    private final byte[] preRoll;
+    private final int preRollFrames;
+    private int preRollNext;
+    private int preRollCount;
+
+    private final byte[] utterance;
+    private int utteranceLength;
+    // End of the last speech frame within the utterance
+    private int lastSpeechEnd;
+
+    private boolean inSpeech;
+    private int onsetFrames;
+    private int silentFrames;
+
+    private long speechFrameCount;
+    private long silenceFrameCount;
+    private long segmentCount;
+
+    public SpeechEndpointer(AudioFormat format, VadSettings settings, SegmentListener listener) {
+        if (!VoiceActivityDetector.supports(format)) {
+            throw new IllegalArgumentException("Voice activity detection needs signed 16-bit PCM, got " + format);
+        }
+        this.format = format;
+        this.detector = new VoiceActivityDetector(settings);
+        this.listener = listener;
+        this.frameBytes = frameBytes(format, settings);
+        this.minSpeechFrames = Math.max(1, settings.frames(settings.minSpeechMs()));
+        this.endSilenceFrames = Math.max(1, settings.frames(settings.endSilenceMs()));
+        this.hangoverBytes = settings.frames(settings.hangoverMs()) * frameBytes;
+
+        this.frame = new byte[frameBytes];
+        this.frameView = ByteBuffer.wrap(frame);
+        this.preRollFrames = settings.frames(settings.preRollMs()) + minSpeechFrames;
+        this.preRoll = new byte[preRollFrames * frameBytes];
+        int utteranceFrames = Math.max(settings.frames(settings.maxUtteranceMs()), preRollFrames + 1);
+        this.utterance = new byte[utteranceFrames * frameBytes];
+    }
+
+    public void accept(byte[] pcm, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            int chunk = Math.min(end - offset, frameBytes - frameFill);
+            System.arraycopy(pcm, offset, frame, frameFill, chunk);
+            frameFill += chunk;
+            offset += chunk;
+            if (frameFill == frameBytes) {
+                processFrame();
+                frameFill = 0;
+            }
+        }
+    }
+
+    /**
+     * Ends any utterance in progress (e.g. when capture stops) and forgets buffered audio.
+     */
+    public void flush() {
+        if (inSpeech) {
+            emit(speechEnd());
+        }
+        inSpeech = false;
+        onsetFrames = 0;
+        silentFrames = 0;
+        frameFill = 0;
+        preRollCount = 0;
+    }
+
+    public boolean isInSpeech() {
+        return inSpeech;
+    }
+
+    public long getSpeechFrameCount() {
+        return speechFrameCount;
+    }
+
+    public long getSilenceFrameCount() {
+        return silenceFrameCount;
+    }
+
+    public long getSegmentCount() {
+        return segmentCount;
+    }
+
+    private void processFrame() {
+        boolean voiced = detector.isSpeech(frameView, 0, frameBytes, format);
+        if (voiced) {
+            speechFrameCount++;
+        } else {
+            silenceFrameCount++;
+        }
+
+        if (!inSpeech) {
+            pushPreRoll();
+            onsetFrames = voiced ? onsetFrames + 1 : 0;
+            if (onsetFrames >= minSpeechFrames) {
+                startUtterance();
+            }
+            return;
+        }
+
+        if (utteranceLength + frameBytes > utterance.length) {
+            // Split overlong utterances and carry on with the same speech run
+            emit(utteranceLength);
+        }
+        System.arraycopy(frame, 0, utterance, utteranceLength, frameBytes);
+        utteranceLength += frameBytes;
+
+        if (voiced) {
+            silentFrames = 0;
+            lastSpeechEnd = utteranceLength;
+        } else if (++silentFrames >= endSilenceFrames) {
+            emit(speechEnd());
+            inSpeech = false;
+            onsetFrames = 0;
+        }
+    }
+
+    private void pushPreRoll() {
+        System.arraycopy(frame, 0, preRoll, preRollNext * frameBytes, frameBytes);
+        preRollNext = (preRollNext + 1) % preRollFrames;
+        preRollCount = Math.min(preRollCount + 1, preRollFrames);
+    }
+
+    private void startUtterance() {
+        inSpeech = true;
+        silentFrames = 0;
+        utteranceLength = 0;
+        // Oldest buffered frame first; the ring ends with the onset frames themselves
+        int oldest = (preRollNext - preRollCount + preRollFrames) % preRollFrames;
+        for (int i = 0; i < preRollCount; i++) {
+            int slot = (oldest + i) % preRollFrames;
+            System.arraycopy(preRoll, slot * frameBytes, utterance, utteranceLength, frameBytes);
+            utteranceLength += frameBytes;
+        }
+        preRollCount = 0;
+        lastSpeechEnd = utteranceLength;
+    }
+
+    /**
+     * End of the utterance with its hangover, or 0 when no frame since the last split was voiced:
+     * the remainder is then only trailing silence and is dropped rather than sent as a segment.
+     */
+    private int speechEnd() {
+        return lastSpeechEnd == 0 ? 0 : Math.min(utteranceLength, lastSpeechEnd + hangoverBytes);
+    }
+
+    private void emit(int length) {
+        if (length > 0) {
+            segmentCount++;
+            listener.onSegment(utterance, length);
+        }
+        utteranceLength = 0;
+        lastSpeechEnd = 0;
+    }
+
+    /**
+     * Locates the speech in one already segmented buffer (from its position to its limit),
+     * with the same pre-roll and hangover as live endpointing. Returns null when the buffer holds
+     * no speech, and the whole buffer when the format cannot be analyzed.
+     */
+    public static SpeechSpan findSpeech(ByteBuffer pcm, AudioFormat format, VadSettings settings) {
+        int length = pcm.remaining();
+        if (!VoiceActivityDetector.supports(format)) {
+            return new SpeechSpan(0, length);
+        }
+        VoiceActivityDetector detector = new VoiceActivityDetector(settings);
+        int frameBytes = frameBytes(format, settings);
+        int minSpeechFrames = Math.max(1, settings.frames(settings.minSpeechMs()));
+        int frames = length / frameBytes;
+        int base = pcm.position();
+
+        int firstFrame = -1;
+        int lastFrame = -1;
+        int run = 0;
+        for (int i = 0; i < frames; i++) {
+            if (detector.isSpeech(pcm, base + i * frameBytes, frameBytes, format)) {
+                run++;
+                if (firstFrame < 0 && run >= minSpeechFrames) {
+                    firstFrame = i - run + 1;
+                }
+                lastFrame = i;
+            } else {
+                run = 0;
+            }
+        }
+        if (firstFrame < 0) {
+            return null;
+        }
+        int start = Math.max(0, (firstFrame - settings.frames(settings.preRollMs())) * frameBytes);
+        int end = Math.min(length, (lastFrame + 1 + settings.frames(settings.hangoverMs())) * frameBytes);
+        return new SpeechSpan(start, end);
+    }
+
+    private static int frameBytes(AudioFormat format, VadSettings settings) {
+        int samplesPerFrame = Math.max(1, Math.round(format.getSampleRate() * settings.frameMs() / 1000f));
+        return samplesPerFrame * format.getFrameSize();
+    }
+}
@@ -0,0 +1,36 @@
+package com.phantomquery.audio;
+
+/**
+ * Tuning for {@link VoiceActivityDetector} and {@link SpeechEndpointer}, bound from the
+ * {@code audio.vad.*} properties.
+ *
+ * @param frameMs             analysis frame length
+ * @param minRms              energy below which a frame is never speech (16-bit sample units)
+ * @param noiseRatio          how far above the running noise floor speech must be
+ * @param maxZeroCrossingRate zero crossings per sample above which a frame is treated as noise
+ * @param minSpeechMs         consecutive speech needed to start an utterance
+ * @param preRollMs           audio kept from before the detected onset
+ * @param hangoverMs          audio kept after the last speech frame
+ * @param endSilenceMs        silence that ends an utterance
+ * @param maxUtteranceMs      utterances longer than this are split
+ */
+public record VadSettings(int frameMs,
+                          double minRms,
+                          double noiseRatio,
+                          double maxZeroCrossingRate,
+                          int minSpeechMs,
+                          int preRollMs,
+                          int hangoverMs,
+                          int endSilenceMs,
+                          int maxUtteranceMs) {
+
+    public VadSettings {
+        if (frameMs <= 0 || maxUtteranceMs < frameMs) {
+            throw new IllegalArgumentException("frameMs must be positive and maxUtteranceMs at least one frame");
+        }
+    }
+
+    int frames(int millis) {
+        return Math.max(0, (millis + frameMs - 1) / frameMs);
+    }
+}
@@ -0,0 +1,86 @@
+package com.phantomquery.audio;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+/**
+ * Classifies short frames of signed 16-bit PCM as speech or non-speech from their RMS energy and
+ * zero-crossing rate. The energy threshold adapts to the background: it is the larger of a fixed
+ * minimum and a multiple of a running noise floor estimated from non-speech frames. Frames whose
+ * zero-crossing rate is very high (hiss, fans, broadband noise) only count as speech when they are
+ * far above the threshold.
+ *
+ * Samples are read in place from the caller's buffer; only the first channel is analyzed.
+ * Not thread-safe.
+ */
+public class VoiceActivityDetector {
+
+    // Noise floor smoothing per non-speech frame
+    private static final double NOISE_ADAPT_RATE = 0.05;
+    // Noisy frames need this much more energy than the threshold to count as speech
+    private static final double NOISY_FRAME_ENERGY_FACTOR = 3.0;
+
+    private final double minRms;
+    private final double noiseRatio;
+    private final double maxZeroCrossingRate;
+    private double noiseFloor;
+
+    public VoiceActivityDetector(VadSettings settings) {
+        this.minRms = settings.minRms();
+        this.noiseRatio = settings.noiseRatio();
+        this.maxZeroCrossingRate = settings.maxZeroCrossingRate();
+    }
+
+    /**
+     * Whether {@code length} bytes of interleaved PCM at absolute position {@code offset} of
+     * {@code pcm} contain speech. The buffer's position and limit are not changed.
+     */
+    public boolean isSpeech(ByteBuffer pcm, int offset, int length, AudioFormat format) {
+        int frameSize = format.getFrameSize();
+        int samples = length / frameSize;
+        if (samples == 0) {
+            return false;
+        }
+        boolean bigEndian = format.isBigEndian();
+
+        double sumSquares = 0;
+        int zeroCrossings = 0;
+        int previous = 0;
+        for (int i = 0; i < samples; i++) {
+            int index = offset + i * frameSize;
+            int sample = bigEndian
+                    ? (pcm.get(index) << 8) | (pcm.get(index + 1) & 0xff)
+                    : (pcm.get(index + 1) << 8) | (pcm.get(index) & 0xff);
+            sumSquares += (double) sample * sample;
+            if (i > 0 && (sample >= 0) != (previous >= 0)) {
+                zeroCrossings++;
+            }
+            previous = sample;
+        }
+        double rms = Math.sqrt(sumSquares / samples);
+        double zeroCrossingRate = (double) zeroCrossings / samples;
+
+        double threshold = Math.max(minRms, noiseFloor * noiseRatio);
+        boolean speech = rms > threshold
+                && (zeroCrossingRate <= maxZeroCrossingRate || rms > threshold * NOISY_FRAME_ENERGY_FACTOR);
+        if (!speech) {
+            noiseFloor = noiseFloor == 0 ? rms : noiseFloor + (rms - noiseFloor) * NOISE_ADAPT_RATE;
+        }
+        return speech;
+    }
+
+    public double getNoiseFloor() {
+        return noiseFloor;
+    }
+
+    public void reset() {
+        noiseFloor = 0;
+    }
+
+    /**
+     * Whether the detector can analyze audio in this format (signed 16-bit PCM).
+     */
+    public static boolean supports(AudioFormat format) {
+        return AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding()) && format.getSampleSizeInBits() == 16;
+    }
+}
@@ -0,0 +1,33 @@
+package com.phantomquery.config;
+
+import com.phantomquery.audio.PcmBufferPool;
+import com.phantomquery.audio.VadSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AudioProcessingConfig {
+
+    @Bean
+    public VadSettings vadSettings(@Value("${audio.vad.frame-ms:20}") int frameMs,
+                                   @Value("${audio.vad.min-rms:100}") double minRms,
+                                   @Value("${audio.vad.noise-ratio:3.0}") double noiseRatio,
+                                   @Value("${audio.vad.max-zero-crossing-rate:0.35}") double maxZeroCrossingRate,
+                                   @Value("${audio.vad.min-speech-ms:100}") int minSpeechMs,
+                                   @Value("${audio.vad.pre-roll-ms:300}") int preRollMs,
+                                   @Value("${audio.vad.hangover-ms:300}") int hangoverMs,
+                                   @Value("${audio.vad.end-silence-ms:800}") int endSilenceMs,
+                                   @Value("${audio.vad.max-utterance-ms:15000}") int maxUtteranceMs) {
+        return new VadSettings(frameMs, minRms, noiseRatio, maxZeroCrossingRate,
+                               minSpeechMs, preRollMs, hangoverMs, endSilenceMs, maxUtteranceMs);
+    }
+
+    @Bean
+    public PcmBufferPool pcmBufferPool(@Value("${audio.buffers.block-bytes:65536}") int blockBytes,
+                                       @Value("${audio.buffers.max-total-bytes:67108864}") long maxTotalBytes,
+                                       @Value("${audio.buffers.max-session-bytes:3932160}") int maxSessionBytes,
+                                       @Value("${audio.buffers.direct:false}") boolean direct) {
+        return new PcmBufferPool(blockBytes, maxTotalBytes, maxSessionBytes, direct);
+    }
+}
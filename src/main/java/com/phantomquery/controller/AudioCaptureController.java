@@ -4,6 +4,7 @@ import com.phantomquery.service.SystemAudioCaptureService;
 import com.phantomquery.service.SpeechToTextService;
 import com.phantomquery.service.OpenAiService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
@@ -71,9 +72,21 @@ public class AudioCaptureController {
         response.put("lastTranscription", lastTranscription);
         response.put("lastAiResponse", lastAiResponse);
         response.put("sendToOpenAI", sendToOpenAI);
+        response.put("retainedAudioMs", audioCaptureService.getRetainedAudioMillis());
+        response.put("pipeline", audioCaptureService.getPipelineStats());
         
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * The most recent captured audio as raw 16kHz 16-bit mono PCM, limited to the retention window.
+     */
+    @GetMapping("/audio")
+    public ResponseEntity<byte[]> getCapturedAudio(@RequestParam(defaultValue = "10000") long windowMs) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("audio/L16;rate=16000;channels=1"))
+                .body(audioCaptureService.getCapturedAudio(windowMs));
+    }
     
     @PostMapping("/toggle-openai")
     public ResponseEntity<Map<String, Object>> toggleOpenAI(@RequestBody Map<String, Boolean> request) {
@@ -125,6 +138,13 @@ public class AudioCaptureController {
         }
     }
 
+    @GetMapping("/completion-cache")
+    public ResponseEntity<Map<String, Object>> getCompletionCacheStats() {
+        Map<String, Object> response = new HashMap<>(openAiService.getCacheStats());
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/google-cloud-status")
     public ResponseEntity<Map<String, Object>> getGoogleCloudStatus() {
         Map<String, Object> response = new HashMap<>();
@@ -134,6 +154,8 @@ public class AudioCaptureController {
             String credentialsPath = System.getenv("GOOGLE_APPLICATION_CREDENTIALS");
             
             response.put("success", true);
+            response.put("engine", speechToTextService.getEngineName());
+            response.put("engineAvailable", speechToTextService.isRecognizerAvailable());
             response.put("googleCloudAvailable", googleCloudAvailable);
             response.put("credentialsPath", credentialsPath != null ? credentialsPath : "Not set");
             
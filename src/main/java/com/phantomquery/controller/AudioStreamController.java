@@ -1,44 +1,81 @@
 package com.phantomquery.controller;
 
+import com.phantomquery.audio.PcmBufferPool;
+import com.phantomquery.service.PartialTranscriptionService;
 import com.phantomquery.service.StreamingSpeechToTextService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.google.protobuf.UnsafeByteOperations;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import javax.sound.sampled.AudioFormat;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.io.IOException;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 public class AudioStreamController {
     private static final Logger logger = LoggerFactory.getLogger(AudioStreamController.class);
 
+    // STOMP session attributes binding a WebSocket connection to its streaming session
+    static final String STREAM_SESSION_ATTRIBUTE = "streamSessionId";
+    static final String STREAM_CLIENT_ATTRIBUTE = "streamClientId";
+
     private final StreamingSpeechToTextService streamingSpeechToTextService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final SimpleWebSocketController simpleWebSocketController;
+    private final PcmBufferPool pcmBufferPool;
+    private final PartialTranscriptionService partialTranscriptionService;
+    private final Timer decodeTimer;
+    private final DistributionSummary chunkBytes;
     
     // Map to store active streaming sessions
     private final Map<String, String> activeStreams = new ConcurrentHashMap<>();
 
     @Autowired
     public AudioStreamController(StreamingSpeechToTextService streamingSpeechToTextService, 
-                                SimpMessagingTemplate messagingTemplate) {
+                                SimpMessagingTemplate messagingTemplate,
+                                SimpleWebSocketController simpleWebSocketController,
+                                PcmBufferPool pcmBufferPool,
+                                PartialTranscriptionService partialTranscriptionService,
+                                MeterRegistry meterRegistry) {
         this.streamingSpeechToTextService = streamingSpeechToTextService;
         this.messagingTemplate = messagingTemplate;
+        this.simpleWebSocketController = simpleWebSocketController;
+        this.pcmBufferPool = pcmBufferPool;
+        this.partialTranscriptionService = partialTranscriptionService;
+        this.decodeTimer = Timer.builder("phantomquery.decode")
+                .description("Time to parse an inbound message, including base64 audio")
+                .tag("transport", "stomp")
+                .tag("type", "AudioData")
+                .register(meterRegistry);
+        this.chunkBytes = DistributionSummary.builder("phantomquery.audio.received")
+                .description("Audio received per streaming chunk")
+                .baseUnit("bytes")
+                .tag("scope", "stream")
+                .register(meterRegistry);
         logger.info("AudioStreamController initialized");
     }
 
     @MessageMapping("/start-stream")
-    public void startStream(@Payload Map<String, Object> payload) {
+    public void startStream(@Payload Map<String, Object> payload, SimpMessageHeaderAccessor headerAccessor) {
         String sessionId = UUID.randomUUID().toString();
         String clientId = (String) payload.get("clientId");
         
@@ -46,17 +83,36 @@ public class AudioStreamController {
         
         // Store the session
         activeStreams.put(clientId, sessionId);
+        
+        // Bind the stream to this STOMP connection so binary frames need no lookup
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        if (sessionAttributes != null) {
+            sessionAttributes.put(STREAM_SESSION_ATTRIBUTE, sessionId);
+            sessionAttributes.put(STREAM_CLIENT_ATTRIBUTE, clientId);
+        }
         logger.info("Active streams count: {}", activeStreams.size());
         
+        // Clients may send audio at their native rate and channel count; it is converted server-side
+        AudioFormat inputFormat = new AudioFormat(
+            payload.get("sampleRate") instanceof Number rate ? rate.floatValue() : 16000f,
+            16,
+            payload.get("channels") instanceof Number channels ? channels.intValue() : 1,
+            true,
+            false);
+        
         // Start streaming recognition
         streamingSpeechToTextService.startStreamingRecognition(
             sessionId,
-            transcription -> {
-                logger.debug("Received transcription for session {}: {}", sessionId, transcription);
+            inputFormat,
+            transcript -> {
+                logger.debug("Received transcription for session {}: {}", sessionId, transcript.transcript());
                 // Send transcription to the client
                 Map<String, Object> response = new HashMap<>();
                 response.put("type", "transcription");
-                response.put("text", transcription);
+                response.put("text", transcript.transcript());
+                response.put("isFinal", transcript.isFinal());
+                response.put("stability", transcript.stability());
+                response.put("resultEndTimeMs", transcript.resultEndTime().toMillis());
                 response.put("sessionId", sessionId);
                 
                 messagingTemplate.convertAndSend("/topic/transcription/" + clientId, response);
@@ -84,24 +140,25 @@ public class AudioStreamController {
 
     @MessageMapping("/audio-data")
     public void receiveAudioData(@Payload Map<String, Object> payload) {
-        logger.info("Received WebSocket message: {}", payload);
-        
         String clientId = (String) payload.get("clientId");
         String type = (String) payload.get("type");
         String audioDataBase64 = (String) payload.get("audioData");
         
-        logger.info("Processing audio data - Client: {}, Type: {}, Has Audio Data: {}", 
+        logger.debug("Processing audio data - Client: {}, Type: {}, Has Audio Data: {}", 
                    clientId, type, audioDataBase64 != null);
         
         if (audioDataBase64 != null) {
             try {
+                long decodeStartedAt = System.nanoTime();
                 byte[] audioData = java.util.Base64.getDecoder().decode(audioDataBase64);
-                logger.info("Received audio: {} bytes", audioData.length);
+                decodeTimer.record(System.nanoTime() - decodeStartedAt, TimeUnit.NANOSECONDS);
+                chunkBytes.record(audioData.length);
+                logger.debug("Received audio: {} bytes", audioData.length);
                 
                 String sessionId = activeStreams.get(clientId);
                 if (sessionId != null) {
-                    streamingSpeechToTextService.sendAudioData(sessionId, audioData);
-                    logger.info("Forwarded audio to streaming service for session: {}", sessionId);
+                    streamingSpeechToTextService.sendAudioData(sessionId, UnsafeByteOperations.unsafeWrap(audioData));
+                    logger.debug("Forwarded audio to streaming service for session: {}", sessionId);
                 } else {
                     logger.warn("No active session for client: {}", clientId);
                 }
@@ -111,20 +168,38 @@ public class AudioStreamController {
         }
     }
 
+    /**
+     * Raw LINEAR16 frames, in the format declared at start-stream, for the stream started on this STOMP connection.
+     * The frame body is handed to the recognizer without base64 or a per-frame clientId lookup.
+     */
     @MessageMapping("/binary")
-    public void receiveBinaryAudioData(@Payload byte[] audioData) {
-        // This method will be called for binary audio data
-        logger.debug("Received binary audio data - Size: {} bytes", audioData.length);
+    public void receiveBinaryAudioData(@Payload byte[] audioData, SimpMessageHeaderAccessor headerAccessor) {
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        String sessionId = sessionAttributes != null ? (String) sessionAttributes.get(STREAM_SESSION_ATTRIBUTE) : null;
+        if (sessionId == null) {
+            logger.warn("Dropping {} bytes of binary audio - no active stream for STOMP session {}",
+                       audioData.length, headerAccessor.getSessionId());
+            return;
+        }
         
-        // TODO: Implement proper handling of binary audio data
-        // This will require tracking the client ID from the previous message
+        chunkBytes.record(audioData.length);
+        // The frame body is freshly decoded for this message, so it can be wrapped without a copy
+        streamingSpeechToTextService.sendAudioData(sessionId, UnsafeByteOperations.unsafeWrap(audioData));
+        logger.debug("Forwarded {} bytes of binary audio to session {}", audioData.length, sessionId);
     }
 
     @MessageMapping("/stop-stream")
-    public void stopStream(@Payload Map<String, Object> payload) {
+    public void stopStream(@Payload Map<String, Object> payload, SimpMessageHeaderAccessor headerAccessor) {
         String clientId = (String) payload.get("clientId");
         String sessionId = activeStreams.remove(clientId);
         
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        if (sessionAttributes != null && sessionId != null
+                && sessionId.equals(sessionAttributes.get(STREAM_SESSION_ATTRIBUTE))) {
+            sessionAttributes.remove(STREAM_SESSION_ATTRIBUTE);
+            sessionAttributes.remove(STREAM_CLIENT_ATTRIBUTE);
+        }
+        
         if (sessionId != null) {
             logger.info("Stopping stream - Session ID: {}, Client ID: {}", sessionId, clientId);
             // Stop the streaming recognition
@@ -142,6 +217,23 @@ public class AudioStreamController {
         }
     }
     
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Map<String, Object> sessionAttributes = SimpMessageHeaderAccessor.getSessionAttributes(event.getMessage().getHeaders());
+        if (sessionAttributes == null) {
+            return;
+        }
+        String sessionId = (String) sessionAttributes.remove(STREAM_SESSION_ATTRIBUTE);
+        String clientId = (String) sessionAttributes.remove(STREAM_CLIENT_ATTRIBUTE);
+        if (sessionId != null) {
+            logger.info("STOMP session {} disconnected, stopping stream {}", event.getSessionId(), sessionId);
+            if (clientId != null) {
+                activeStreams.remove(clientId, sessionId);
+            }
+            streamingSpeechToTextService.stopStreamingRecognition(sessionId);
+        }
+    }
+    
     @GetMapping("/api/stream/status")
     @ResponseBody
     public Map<String, Object> getStreamStatus() {
@@ -151,4 +243,16 @@ public class AudioStreamController {
         response.put("streams", activeStreams);
         return response;
     }
+
+    @GetMapping("/api/stream/sessions")
+    @ResponseBody
+    public Map<String, Object> getSessionQueues() {
+        Map<String, Map<String, Object>> outbound = simpleWebSocketController.getOutboundStats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("sessions", outbound.size());
+        response.put("outbound", outbound);
+        response.put("audioBuffers", pcmBufferPool.getStats());
+        response.put("partials", partialTranscriptionService.getStats());
+        return response;
+    }
 } 
\ No newline at end of file
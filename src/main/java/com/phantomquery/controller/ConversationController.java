@@ -1,13 +1,15 @@
 package com.phantomquery.controller;
 
 import com.phantomquery.model.Conversation;
-import com.phantomquery.model.Message;
+import com.phantomquery.model.ConversationSummary;
+import com.phantomquery.model.CursorPage;
+import com.phantomquery.model.MessageView;
 import com.phantomquery.service.ConversationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/conversations")
@@ -32,16 +34,39 @@ public class ConversationController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Most recently active conversations first; pass {@code nextCursor} back as {@code cursor}
+     * for the next page.
+     */
     @GetMapping
-    public ResponseEntity<List<Conversation>> getAllConversations() {
-        List<Conversation> conversations = conversationService.getAllConversations();
-        return ResponseEntity.ok(conversations);
+    public ResponseEntity<CursorPage<ConversationSummary>> getConversations(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(conversationService.getConversationPage(cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
+    /**
+     * The latest messages in chronological order; {@code nextCursor} pages back to older ones.
+     */
     @GetMapping("/{id}/messages")
-    public ResponseEntity<List<Message>> getConversationMessages(@PathVariable String id) {
-        List<Message> messages = conversationService.getConversationMessages(id);
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<CursorPage<MessageView>> getConversationMessages(
+            @PathVariable String id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(conversationService.getMessagePage(id, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(conversationService.getCacheStats());
     }
 
     @DeleteMapping("/{id}")
@@ -0,0 +1,48 @@
+package com.phantomquery.controller;
+
+import com.phantomquery.model.SearchResults;
+import com.phantomquery.service.MessageSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+    private static final int MAX_LIMIT = 50;
+    private static final int MAX_OFFSET = 1000;
+
+    private final MessageSearchIndex searchIndex;
+
+    @Autowired
+    public SearchController(MessageSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Messages matching any word of {@code q}, best first, optionally within one conversation.
+     */
+    @GetMapping
+    public ResponseEntity<SearchResults> search(@RequestParam String q,
+                                                @RequestParam(required = false) String conversationId,
+                                                @RequestParam(defaultValue = "0") int offset,
+                                                @RequestParam(defaultValue = "20") int limit) {
+        if (offset < 0 || offset > MAX_OFFSET || limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(searchIndex.search(q, conversationId, offset, Math.min(limit, MAX_LIMIT)));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(searchIndex.getStats());
+    }
+
+    @PostMapping("/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuild() {
+        boolean started = searchIndex.rebuildAsync();
+        return ResponseEntity.ok(Map.of("started", started));
+    }
+}
@@ -2,38 +2,68 @@ package com.phantomquery.controller;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.Base64;
 import java.io.IOException;
 import com.phantomquery.service.SpeechToTextService;
 import com.phantomquery.service.OpenAiService;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.io.ByteArrayOutputStream;
-import com.fasterxml.jackson.databind.JsonNode;
 import java.util.Date;
 import javax.sound.sampled.AudioFormat;
 import java.util.UUID;
+import com.phantomquery.audio.AudioConverter;
+import com.phantomquery.audio.PcmAccumulator;
+import com.phantomquery.audio.PcmBufferPool;
+import com.phantomquery.audio.SpeechEndpointer;
+import com.phantomquery.audio.VadSettings;
+import com.phantomquery.model.AudioFrame;
 import com.phantomquery.model.Conversation;
 import com.phantomquery.model.Message;
+import com.phantomquery.model.Transcription;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.phantomquery.service.ConversationService;
+import com.phantomquery.service.PartialTranscriptionService;
+import com.phantomquery.websocket.ClientMessage;
+import com.phantomquery.websocket.MessageCodec;
+import com.phantomquery.websocket.ServerMessage;
+import com.phantomquery.websocket.SessionOutbox;
+import com.phantomquery.websocket.SlowConsumerPolicy;
 
 @Component
-public class SimpleWebSocketController extends TextWebSocketHandler {
+public class SimpleWebSocketController extends AbstractWebSocketHandler {
     private static final Logger logger = LoggerFactory.getLogger(SimpleWebSocketController.class);
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, StringBuilder> audioBuffers = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Every message to a client goes through its outbox; nothing calls sendMessage directly
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    // Decoded PCM of the utterance in progress, in blocks borrowed from the shared pool
+    private final Map<String, PcmAccumulator> audioBuffers = new ConcurrentHashMap<>();
+    private final MessageCodec codec = new MessageCodec(new ObjectMapper());
     
     // For tracking speech segments
     private final Map<String, Integer> speechSegmentCount = new ConcurrentHashMap<>();
@@ -41,224 +71,456 @@ public class SimpleWebSocketController extends TextWebSocketHandler {
     // Services for speech-to-text and AI response
     private final SpeechToTextService speechToTextService;
     private final OpenAiService openAiService;
+    private final VadSettings vadSettings;
+    private final PcmBufferPool pcmBufferPool;
     
     private final Map<String, Long> lastChunkTimestamps = new ConcurrentHashMap<>();
     private final Map<String, Boolean> isSpeaking = new ConcurrentHashMap<>();
     private final Map<String, Long> speechStartTimes = new ConcurrentHashMap<>();
     private static final long CHUNK_TIMEOUT_MS = 1000; // 1 second timeout for chunks
     private static final int MAX_MESSAGE_SIZE = 1024 * 1024; // 1MB max message size
+    private static final String LAST_SEQUENCE_ATTRIBUTE = "lastAudioSequence";
+    private static final String TRANSCRIPTION_KEY = "transcription";
+
+    // Outbound delivery
+    private final ExecutorService sender;
+    // Disconnects sessions whose send has stalled, whether or not anything more is queued
+    private final ScheduledExecutorService stallWatchdog;
+    private final int maxQueuedBytes;
+    private final long sendTimeLimitMs;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    // Metrics
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> sessionAudioBytes = new ConcurrentHashMap<>();
+    // One decode timer per message type, registered on first use
+    private final Map<Class<?>, Timer> decodeTimers = new ConcurrentHashMap<>();
+    private final DistributionSummary chunkBytes;
+    private final DistributionSummary utteranceBytes;
+    private final DistributionSummary segmentBytes;
+    private final DistributionSummary sessionBytes;
+    private final Timer outboundQueueTimer;
+    private final Timer outboundSendTimer;
     
     @Autowired
     private ConversationService conversationService;
+
+    @Autowired
+    private PartialTranscriptionService partialTranscriptionService;
     
     @Autowired
-    public SimpleWebSocketController(SpeechToTextService speechToTextService, OpenAiService openAiService) {
+    public SimpleWebSocketController(SpeechToTextService speechToTextService, OpenAiService openAiService,
+                                     VadSettings vadSettings, PcmBufferPool pcmBufferPool, MeterRegistry meterRegistry,
+                                     @Value("${websocket.outbound.max-queue-bytes:524288}") int maxQueuedBytes,
+                                     @Value("${websocket.outbound.send-time-limit-ms:10000}") long sendTimeLimitMs,
+                                     @Value("${websocket.outbound.slow-consumer-policy:COALESCE}") SlowConsumerPolicy slowConsumerPolicy,
+                                     @Value("${websocket.outbound.sender-threads:4}") int senderThreads) {
         this.speechToTextService = speechToTextService;
         this.openAiService = openAiService;
+        this.vadSettings = vadSettings;
+        this.pcmBufferPool = pcmBufferPool;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.meterRegistry = meterRegistry;
+        this.chunkBytes = audioBytes("chunk", "Audio received per speech_data chunk");
+        this.utteranceBytes = audioBytes("utterance", "Audio buffered per utterance at speech_end");
+        this.segmentBytes = audioBytes("segment", "Audio received per complete speech segment");
+        this.sessionBytes = audioBytes("session", "Audio received per WebSocket session");
+        this.outboundQueueTimer = Timer.builder("phantomquery.websocket.outbound.wait")
+                .description("Time outbound messages wait in a session's outbox before sending")
+                .register(meterRegistry);
+        this.outboundSendTimer = Timer.builder("phantomquery.websocket.send")
+                .description("Time spent writing one outbound message to the session")
+                .register(meterRegistry);
+        Gauge.builder("phantomquery.websocket.sessions", sessions, Map::size)
+                .description("Connected WebSocket sessions")
+                .register(meterRegistry);
+        Gauge.builder("phantomquery.websocket.outbound.queued", this, SimpleWebSocketController::getQueuedOutboundBytes)
+                .description("Bytes waiting in all session outboxes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "websocket-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stallWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-stall-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepIntervalMs = Math.max(100, sendTimeLimitMs / 4);
+        stallWatchdog.scheduleWithFixedDelay(this::checkStalledSends, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stallWatchdog.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    private void checkStalledSends() {
+        for (SessionOutbox outbox : outboxes.values()) {
+            try {
+                outbox.checkStalled();
+            } catch (RuntimeException e) {
+                logger.error("Error checking outbound queue of session {}: {}", outbox.getSession().getId(), e.getMessage());
+            }
+        }
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         String sessionId = session.getId();
         sessions.put(sessionId, session);
-        audioBuffers.put(sessionId, new StringBuilder());
+        outboxes.put(sessionId, new SessionOutbox(session, sender, maxQueuedBytes, sendTimeLimitMs, slowConsumerPolicy,
+                outboundQueueTimer, outboundSendTimer));
+        sessionAudioBytes.put(sessionId, new AtomicLong());
+        audioBuffers.put(sessionId, pcmBufferPool.newAccumulator());
         logger.info("Client connected: {}", sessionId);
         
         // Send the client ID to the client
-        try {
-            Map<String, Object> responseMap = new HashMap<>();
-            responseMap.put("type", "client_id");
-            responseMap.put("clientId", sessionId);
-            
-            String response = objectMapper.writeValueAsString(responseMap);
-            logger.info("Sending client ID to client {}: {}", sessionId, response);
-            
-            session.sendMessage(new TextMessage(response));
-        } catch (IOException e) {
-            logger.error("Error sending client ID to client {}: {}", sessionId, e.getMessage());
-        }
+        logger.info("Sending client ID to client {}", sessionId);
+        send(sessionId, new ServerMessage.ClientId(sessionId));
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
         String sessionId = session.getId();
-        JsonNode jsonNode = objectMapper.readTree(message.getPayload());
-        String type = jsonNode.get("type").asText();
-
-        switch (type) {
-            case "connection":
-                // Just acknowledge the connection
-                logger.info("Client {} connected: {}", sessionId, jsonNode.get("message").asText());
-                break;
-            case "speech_start":
-                handleSpeechStart(sessionId);
-                break;
-            case "speech_data":
-                handleSpeechData(sessionId, jsonNode);
-                break;
-            case "speech_end":
-                handleSpeechEnd(sessionId);
-                break;
-            case "speech":
-                // Handle direct speech data from Python client
-                String audioData = jsonNode.get("audioData").asText();
-                String clientId = jsonNode.has("clientId") ? jsonNode.get("clientId").asText() : sessionId;
-                logger.info("Received speech data from client: {}", clientId);
-                processSpeechSegment(session, clientId, audioData);
-                break;
-            case "send_message":
-                handleSendMessage(sessionId, jsonNode);
-                break;
-            case "clear_input":
-                handleClearInput(sessionId);
-                break;
-            default:
-                logger.warn("Unknown message type: {}", type);
+        // Streaming read: audio is decoded from base64 without a JSON tree or an intermediate string
+        long decodeStartedAt = System.nanoTime();
+        ClientMessage clientMessage = codec.read(message.getPayload());
+        decodeTimers.computeIfAbsent(clientMessage.getClass(), this::decodeTimer)
+                .record(System.nanoTime() - decodeStartedAt, TimeUnit.NANOSECONDS);
+
+        if (clientMessage instanceof ClientMessage.Connection connection) {
+            // Just acknowledge the connection
+            logger.info("Client {} connected: {}", sessionId, connection.message());
+        } else if (clientMessage instanceof ClientMessage.SpeechStart) {
+            handleSpeechStart(sessionId);
+        } else if (clientMessage instanceof ClientMessage.SpeechData data) {
+            handleSpeechData(sessionId, data.audio());
+        } else if (clientMessage instanceof ClientMessage.SpeechEnd) {
+            handleSpeechEnd(sessionId);
+        } else if (clientMessage instanceof ClientMessage.Speech speech) {
+            // Handle direct speech data from Python client
+            String clientId = speech.clientId() != null ? speech.clientId() : sessionId;
+            logger.info("Received speech data from client: {}", clientId);
+            processSpeechSegment(session, clientId, speech.audioData());
+        } else if (clientMessage instanceof ClientMessage.SendMessage sendMessage) {
+            handleSendMessage(sessionId, sendMessage);
+        } else if (clientMessage instanceof ClientMessage.ClearInput) {
+            handleClearInput(sessionId);
+        } else if (clientMessage instanceof ClientMessage.Unknown unknown) {
+            logger.warn("Unknown message type: {}", unknown.type());
         }
     }
 
-    private void processSpeechSegment(WebSocketSession session, String sessionId, String audioData) {
+    /**
+     * Binary frames carry one complete speech segment each (the binary equivalent of the
+     * JSON "speech" message). The PCM goes from the frame buffer into the ByteString used
+     * by RecognitionAudio with a single copy, without base64 or a JSON tree.
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        String sessionId = session.getId();
+        AudioFrame frame;
         try {
-            // Decode base64 audio data
-            byte[] audioBytes = Base64.getDecoder().decode(audioData);
-            logger.info("Received audio data size: {} bytes", audioBytes.length);
-            
-            // Convert speech to text
-            String transcription = speechToTextService.convertSpeechToText(audioBytes);
-            
-            // Clean up the transcription (remove prefix if present)
-            if (transcription != null && transcription.startsWith("Recognized text: ")) {
-                transcription = transcription.substring("Recognized text: ".length());
-            }
-            
-            // Log the transcription
-            logger.info("Transcription for session {}: {}", sessionId, transcription);
-            
-            // Create a simple, direct transcription message
-            Map<String, Object> responseMap = new HashMap<>();
-            responseMap.put("type", "transcription");
-            responseMap.put("text", transcription);
-            responseMap.put("append", false);
-            
-            // Convert to JSON
-            String response = objectMapper.writeValueAsString(responseMap);
-            logger.info("Broadcasting transcription to all clients: {}", response);
-            
-            // Broadcast to all connected clients
-            for (WebSocketSession clientSession : sessions.values()) {
-                try {
-                    clientSession.sendMessage(new TextMessage(response));
-                    logger.info("Sent transcription to client: {}", clientSession.getId());
-                } catch (IOException e) {
-                    logger.error("Error sending transcription to client {}: {}", clientSession.getId(), e.getMessage());
-                }
-            }
-            
-        } catch (Exception e) {
-            logger.error("Error processing speech segment: {}", e.getMessage());
-            try {
-                String errorMessage = objectMapper.writeValueAsString(Map.of(
-                    "type", "error",
-                    "message", "Error processing speech: " + e.getMessage()
-                ));
-                session.sendMessage(new TextMessage(errorMessage));
-            } catch (IOException ex) {
-                logger.error("Error sending error message: {}", ex.getMessage());
-            }
+            frame = AudioFrame.parse(message.getPayload());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected binary frame from session {}: {}", sessionId, e.getMessage());
+            sendError(session, "Invalid audio frame: " + e.getMessage());
+            return;
         }
-    }
 
-    private void handleSpeechStart(String sessionId) {
-        audioBuffers.get(sessionId).setLength(0);
-        logger.info("Speech started for session: {}", sessionId);
+        Integer lastSequence = (Integer) session.getAttributes().get(LAST_SEQUENCE_ATTRIBUTE);
+        if (lastSequence != null && frame.getSequence() <= lastSequence) {
+            logger.warn("Dropping stale audio frame {} (last {}) for session {}", frame.getSequence(), lastSequence, sessionId);
+            return;
+        }
+        if (lastSequence != null && frame.getSequence() != lastSequence + 1) {
+            logger.warn("Audio frame gap for session {}: expected {}, got {}", sessionId, lastSequence + 1, frame.getSequence());
+        }
+        session.getAttributes().put(LAST_SEQUENCE_ATTRIBUTE, frame.getSequence());
+
+        logger.info("Received binary audio frame - session: {}, stream: {}, seq: {}, {} bytes at {} Hz x {}",
+                sessionId, frame.getStreamId(), frame.getSequence(), frame.getPayloadSize(),
+                frame.getSampleRate(), frame.getChannels());
+
+        // The container reuses the frame buffer once this method returns, so take the one copy here
+        ByteString audio = ByteString.copyFrom(frame.getPayload());
+        processSpeechSegment(session, sessionId, audio, frame.toAudioFormat());
     }
 
-    private void handleSpeechData(String sessionId, JsonNode jsonNode) throws IOException {
-        String audioData = jsonNode.get("audio").asText();
-        audioBuffers.get(sessionId).append(audioData);
-        logger.info("Received audio data for session: {}", sessionId);
+    private void processSpeechSegment(WebSocketSession session, String sessionId, byte[] audioBytes) {
+        logger.info("Received audio data size: {} bytes", audioBytes.length);
         
-        // Process the audio data immediately
-        byte[] audioBytes = Base64.getDecoder().decode(audioData);
-        logger.info("Decoded audio data size: {} bytes", audioBytes.length);
+        // The decoded array is ours alone, so wrap it rather than copying again
+        processSpeechSegment(session, sessionId, UnsafeByteOperations.unsafeWrap(audioBytes),
+                speechToTextService.detectAudioFormat(audioBytes));
+    }
+
+    private void processSpeechSegment(WebSocketSession session, String sessionId, ByteString audio, AudioFormat format) {
+        segmentBytes.record(audio.size());
+        countAudio(session.getId(), audio.size());
+        // Clients cut segments with a simple energy threshold; drop segments without speech and
+        // trim leading and trailing silence before paying for recognition
+        SpeechEndpointer.SpeechSpan speech = SpeechEndpointer.findSpeech(audio.asReadOnlyByteBuffer(), format, vadSettings);
+        if (speech == null) {
+            logger.info("No speech detected in {} byte segment from session {}, skipping recognition", audio.size(), sessionId);
+            return;
+        }
+        if (speech.length() < audio.size()) {
+            logger.debug("Trimmed segment from session {} to {} of {} bytes", sessionId, speech.length(), audio.size());
+            audio = audio.substring(speech.start(), speech.end());
+        }
+
+        // Recognition runs on the recognizer pool; the transport thread returns immediately
+        speechToTextService.transcribeAsync(audio, format).whenComplete((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                logger.error("Error processing speech segment: {}", cause.getMessage());
+                sendError(session, "Error processing speech: " + cause.getMessage());
+                return;
+            }
+            broadcastTranscription(sessionId, result);
+        });
+    }
+
+    private void broadcastTranscription(String sessionId, Transcription result) {
+        String transcription = result.text();
         
-        String transcription = speechToTextService.convertSpeechToText(audioBytes);
+        // Log the transcription
+        logger.info("Transcription for session {} ({} ms): {}", sessionId, result.latencyMillis(), transcription);
         
-        // Clean up the transcription (remove prefix if present)
-        if (transcription != null && transcription.startsWith("Recognized text: ")) {
-            transcription = transcription.substring("Recognized text: ".length());
+        // Serialize once for every recipient
+        String response = serialize(new ServerMessage.Transcription(transcription, false));
+        if (response == null) {
+            return;
         }
+        logger.info("Broadcasting transcription to all clients: {}", response);
         
-        // Log the transcription
-        logger.info("Transcription for session {}: {}", sessionId, transcription);
+        // Queue for every connected client; a slow one only backs up its own outbox
+        for (SessionOutbox outbox : outboxes.values()) {
+            outbox.send(response);
+        }
+    }
+
+    private void sendError(WebSocketSession session, String message) {
+        send(session.getId(), new ServerMessage.ErrorMessage(message));
+    }
+
+    private void send(String sessionId, ServerMessage message) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox == null) {
+            logger.warn("Session {} closed before response could be sent", sessionId);
+            return;
+        }
+        String payload = serialize(message);
+        if (payload != null) {
+            outbox.send(payload);
+        }
+    }
+
+    /**
+     * Sends a message that a later one supersedes (partial transcripts, response deltas), which a
+     * slow client's outbox may coalesce or drop.
+     */
+    private void sendInterim(String sessionId, ServerMessage message, String coalesceKey) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox == null) {
+            return;
+        }
+        String payload = serialize(message);
+        if (payload != null) {
+            outbox.sendInterim(payload, coalesceKey);
+        }
+    }
+
+    private String serialize(ServerMessage message) {
+        try {
+            return codec.write(message);
+        } catch (JsonProcessingException e) {
+            logger.error("Error serializing {} message: {}", message.type(), e.getMessage());
+            return null;
+        }
+    }
+
+    private Timer decodeTimer(Class<?> messageType) {
+        return Timer.builder("phantomquery.decode")
+                .description("Time to parse an inbound message, including base64 audio")
+                .tag("transport", "websocket")
+                .tag("type", messageType.getSimpleName())
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary audioBytes(String scope, String description) {
+        return DistributionSummary.builder("phantomquery.audio.received")
+                .description(description)
+                .baseUnit("bytes")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    private void countAudio(String sessionId, int bytes) {
+        AtomicLong total = sessionAudioBytes.get(sessionId);
+        if (total != null) {
+            total.addAndGet(bytes);
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Bytes waiting in all outboxes together.
+     */
+    public long getQueuedOutboundBytes() {
+        long total = 0;
+        for (SessionOutbox outbox : outboxes.values()) {
+            total += outbox.getQueuedBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Outbound queue state per connected session.
+     */
+    public Map<String, Map<String, Object>> getOutboundStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        outboxes.forEach((sessionId, outbox) -> stats.put(sessionId, outbox.getStats()));
+        return stats;
+    }
+
+    private void handleSpeechStart(String sessionId) {
+        // Partials of an utterance that never saw speech_end are dropped with it
+        partialTranscriptionService.finish(sessionId);
+        PcmAccumulator buffer = audioBuffers.get(sessionId);
+        synchronized (buffer) {
+            buffer.release();
+        }
+        logger.info("Speech started for session: {}", sessionId);
+    }
+
+    private void handleSpeechData(String sessionId, byte[] audioBytes) {
+        chunkBytes.record(audioBytes.length);
+        countAudio(sessionId, audioBytes.length);
+        PcmAccumulator buffer = audioBuffers.get(sessionId);
+        boolean appended;
+        synchronized (buffer) {
+            appended = buffer.append(audioBytes);
+        }
+        if (!appended) {
+            // Over the per-session or global cap; the utterance is recognized without this chunk
+            logger.warn("Audio buffer full for session {}, dropping {} byte chunk", sessionId, audioBytes.length);
+            return;
+        }
+        logger.debug("Received {} bytes of audio data for session: {}", audioBytes.length, sessionId);
         
-        // Send the transcription back to the client
-        WebSocketSession session = sessions.get(sessionId);
-        String response = objectMapper.writeValueAsString(Map.of(
-            "type", "transcription",
-            "text", transcription,
-            "append", false
-        ));
-        logger.info("Sending transcription response to client: {}", response);
-        session.sendMessage(new TextMessage(response));
+        // Chunks are batched into debounced windows for live text; each partial replaces the
+        // previous one in the client, so it can be coalesced
+        partialTranscriptionService.audioAdded(sessionId, buffer, partial -> {
+            logger.info("Partial transcription for session {}: {}", sessionId, partial);
+            sendInterim(sessionId, new ServerMessage.Transcription(partial, false), TRANSCRIPTION_KEY);
+        });
         
         // No longer automatically generate AI response
     }
 
-    private void handleSpeechEnd(String sessionId) throws IOException {
-        StringBuilder buffer = audioBuffers.get(sessionId);
-        if (buffer.length() > 0) {
-            String transcription = speechToTextService.convertSpeechToText(buffer.toString().getBytes());
-            WebSocketSession session = sessions.get(sessionId);
-            
-            // Get the current input value from the session attributes
-            String currentInput = (String) session.getAttributes().getOrDefault("currentInput", "");
-            boolean shouldAppend = !currentInput.isEmpty();
-            logger.info("Speech end - Current input: '{}', Should append: {}", currentInput, shouldAppend);
-            
-            // Store the new input value
-            session.getAttributes().put("currentInput", transcription);
-            
-            // Send the transcription back to the client
-            String response = objectMapper.writeValueAsString(Map.of(
-                "type", "transcription",
-                "text", transcription,
-                "append", shouldAppend
-            ));
-            logger.info("Sending final transcription response to client: {}", response);
-            session.sendMessage(new TextMessage(response));
-            
-            logger.info("Speech ended for session: {}", sessionId);
+    private void handleSpeechEnd(String sessionId) {
+        // The final transcript of the whole utterance replaces the partials
+        partialTranscriptionService.finish(sessionId);
+        PcmAccumulator buffer = audioBuffers.get(sessionId);
+        ByteString audio = null;
+        synchronized (buffer) {
+            if (!buffer.isEmpty()) {
+                // One copy out of the pooled blocks, which go straight back to the pool
+                audio = buffer.toByteString();
+                buffer.release();
+            }
+        }
+        if (audio != null) {
+            utteranceBytes.record(audio.size());
+            speechToTextService.transcribeAsync(audio, AudioConverter.TARGET_FORMAT).whenComplete((result, error) -> {
+                if (error != null) {
+                    logger.error("Error transcribing speech for session {}: {}", sessionId, error.getMessage());
+                    return;
+                }
+                WebSocketSession session = sessions.get(sessionId);
+                if (session == null) {
+                    return;
+                }
+                String transcription = result.text();
+                
+                // Get the current input value from the session attributes
+                String currentInput = (String) session.getAttributes().getOrDefault("currentInput", "");
+                boolean shouldAppend = !currentInput.isEmpty();
+                logger.info("Speech end - Current input: '{}', Should append: {}", currentInput, shouldAppend);
+                
+                // Store the new input value
+                session.getAttributes().put("currentInput", transcription);
+                
+                // Send the transcription back to the client
+                logger.info("Sending final transcription response to client {}", sessionId);
+                send(sessionId, new ServerMessage.Transcription(transcription, shouldAppend));
+                
+                logger.info("Speech ended for session: {}", sessionId);
+            });
             
             // No longer automatically generate AI response
         }
     }
 
-    private void handleSendMessage(String sessionId, JsonNode jsonNode) throws IOException {
-        String content = jsonNode.get("content").asText();
-        String conversationId = jsonNode.get("conversationId").asText();
-        
-        // Add user message and get AI response
-        Message aiMessage = conversationService.addUserMessage(conversationId, content);
+    private void handleSendMessage(String sessionId, ClientMessage.SendMessage request) {
+        String content = request.content();
+        String conversationId = request.conversationId();
         WebSocketSession session = sessions.get(sessionId);
         
         // Clear the input after sending
         session.getAttributes().put("currentInput", "");
+
+        if (request.stream()) {
+            streamAiResponse(session, conversationId, content);
+            return;
+        }
+        
+        // Add user message and get AI response
+        Message aiMessage = conversationService.addUserMessage(conversationId, content);
         
         // Send AI response back to client
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(Map.of(
-            "type", "ai_response",
-            "content", aiMessage.getContent()
-        ))));
+        send(sessionId, new ServerMessage.AiResponse(aiMessage.getContent()));
         logger.info("AI response sent for session: {}", sessionId);
     }
 
-    private void handleClearInput(String sessionId) throws IOException {
+    /**
+     * Forwards each token as an "ai_response_delta" as soon as OpenAI produces it, then sends the
+     * complete text as the usual "ai_response" so clients can reconcile what they rendered.
+     * Nothing blocks the WebSocket thread while the completion is generated.
+     */
+    private void streamAiResponse(WebSocketSession session, String conversationId, String content) {
+        String sessionId = session.getId();
+        // The final ai_response replaces whatever deltas arrived, so these may be dropped
+        conversationService.addUserMessageStreaming(conversationId, content,
+                delta -> sendInterim(sessionId, new ServerMessage.AiResponseDelta(delta), null)
+        ).whenComplete((aiMessage, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                logger.error("Error streaming AI response for session {}: {}", sessionId, cause.getMessage());
+                sendError(session, "Error getting AI response: " + cause.getMessage());
+                return;
+            }
+            send(sessionId, new ServerMessage.AiResponse(aiMessage.getContent()));
+            logger.info("Streamed AI response sent for session: {}", sessionId);
+        });
+    }
+
+    private void handleClearInput(String sessionId) {
         WebSocketSession session = sessions.get(sessionId);
         session.getAttributes().put("currentInput", "");
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(Map.of(
-            "type", "input_cleared"
-        ))));
+        send(sessionId, new ServerMessage.InputCleared());
         logger.info("Input cleared for session: {}", sessionId);
     }
 
@@ -271,7 +533,21 @@ public class SimpleWebSocketController extends TextWebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         String sessionId = session.getId();
         sessions.remove(sessionId);
-        audioBuffers.remove(sessionId);
+        SessionOutbox outbox = outboxes.remove(sessionId);
+        if (outbox != null) {
+            outbox.close();
+        }
+        partialTranscriptionService.finish(sessionId);
+        AtomicLong audioTotal = sessionAudioBytes.remove(sessionId);
+        if (audioTotal != null) {
+            sessionBytes.record(audioTotal.get());
+        }
+        PcmAccumulator buffer = audioBuffers.remove(sessionId);
+        if (buffer != null) {
+            synchronized (buffer) {
+                buffer.release();
+            }
+        }
         logger.info("Client disconnected: {}", sessionId);
     }
 } 
\ No newline at end of file
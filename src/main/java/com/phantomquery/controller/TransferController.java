@@ -0,0 +1,55 @@
+package com.phantomquery.controller;
+
+import com.phantomquery.model.ImportResult;
+import com.phantomquery.service.ConversationTransferService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api")
+public class TransferController {
+    private static final Logger logger = LoggerFactory.getLogger(TransferController.class);
+
+    private final ConversationTransferService transferService;
+
+    @Autowired
+    public TransferController(ConversationTransferService transferService) {
+        this.transferService = transferService;
+    }
+
+    /**
+     * All conversations, or one, as NDJSON streamed from the database.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) String conversationId) {
+        StreamingResponseBody body = out -> transferService.export(conversationId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"conversations.ndjson\"")
+                .body(body);
+    }
+
+    /**
+     * Imports NDJSON as produced by {@link #export}, read from the request body as it arrives.
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> importConversations(InputStream body) throws IOException {
+        try {
+            ImportResult result = transferService.importFrom(body);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Import stopped: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
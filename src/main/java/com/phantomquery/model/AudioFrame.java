@@ -0,0 +1,113 @@
+package com.phantomquery.model;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary audio frame sent over /simple-websocket.
+ *
+ * <pre>
+ * offset size field
+ *  0     2    magic "PQ"
+ *  2     1    version (1)
+ *  3     1    encoding (1 = signed 16-bit little-endian PCM)
+ *  4     4    stream id (chosen by the client, e.g. one per utterance)
+ *  8     4    sequence number (increasing per connection)
+ * 12     4    sample rate in Hz
+ * 16     1    channel count
+ * 17     1    flags (reserved, 0)
+ * 18     2    reserved (0)
+ * 20     ...  raw PCM payload
+ * </pre>
+ *
+ * Header fields are big-endian. The payload is exposed as a read-only slice of
+ * the incoming buffer, so parsing never copies audio.
+ */
+public final class AudioFrame {
+    public static final int HEADER_SIZE = 20;
+    public static final byte VERSION = 1;
+    public static final byte ENCODING_PCM_S16LE = 1;
+
+    private static final byte MAGIC_0 = 'P';
+    private static final byte MAGIC_1 = 'Q';
+
+    private final int streamId;
+    private final int sequence;
+    private final int sampleRate;
+    private final int channels;
+    private final int flags;
+    private final ByteBuffer payload;
+
+    private AudioFrame(int streamId, int sequence, int sampleRate, int channels, int flags, ByteBuffer payload) {
+        this.streamId = streamId;
+        this.sequence = sequence;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.flags = flags;
+        this.payload = payload;
+    }
+
+    public static AudioFrame parse(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (in.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("Audio frame shorter than header: " + in.remaining() + " bytes");
+        }
+        if (in.get() != MAGIC_0 || in.get() != MAGIC_1) {
+            throw new IllegalArgumentException("Audio frame has bad magic");
+        }
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported audio frame version: " + version);
+        }
+        byte encoding = in.get();
+        if (encoding != ENCODING_PCM_S16LE) {
+            throw new IllegalArgumentException("Unsupported audio frame encoding: " + encoding);
+        }
+        int streamId = in.getInt();
+        int sequence = in.getInt();
+        int sampleRate = in.getInt();
+        int channels = in.get() & 0xFF;
+        int flags = in.get() & 0xFF;
+        in.getShort();
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid audio frame format: " + sampleRate + " Hz, " + channels + " channels");
+        }
+        if (in.remaining() % (2 * channels) != 0) {
+            throw new IllegalArgumentException("Audio frame payload is not a whole number of samples: " + in.remaining() + " bytes");
+        }
+        return new AudioFrame(streamId, sequence, sampleRate, channels, flags, in.slice().asReadOnlyBuffer());
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    public int getPayloadSize() {
+        return payload.remaining();
+    }
+
+    public AudioFormat toAudioFormat() {
+        return new AudioFormat(sampleRate, 16, channels, true, false);
+    }
+}
@@ -7,7 +7,9 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations", indexes = {
+        @Index(name = "idx_conversations_updated_at", columnList = "updated_at, id")
+})
 public class Conversation {
     @Id
     private String id;
@@ -20,6 +22,17 @@ public class Conversation {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
+    // Rolling summary of the turns that no longer fit in the prompt context
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    // Timestamp of the newest message folded into the summary
+    @Column(name = "summary_through")
+    private LocalDateTime summaryThrough;
+
+    @Column(name = "summary_token_count")
+    private Integer summaryTokenCount;
+    
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Message> messages = new ArrayList<>();
 
@@ -66,6 +79,30 @@ public class Conversation {
         this.updatedAt = updatedAt;
     }
 
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public LocalDateTime getSummaryThrough() {
+        return summaryThrough;
+    }
+
+    public void setSummaryThrough(LocalDateTime summaryThrough) {
+        this.summaryThrough = summaryThrough;
+    }
+
+    public Integer getSummaryTokenCount() {
+        return summaryTokenCount;
+    }
+
+    public void setSummaryTokenCount(Integer summaryTokenCount) {
+        this.summaryTokenCount = summaryTokenCount;
+    }
+
     public List<Message> getMessages() {
         return messages;
     }
@@ -0,0 +1,10 @@
+package com.phantomquery.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Conversation list entry, selected straight from the conversations table without loading
+ * the entity or its messages.
+ */
+public record ConversationSummary(String id, String title, LocalDateTime createdAt, LocalDateTime updatedAt) {
+}
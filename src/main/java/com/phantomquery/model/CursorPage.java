@@ -0,0 +1,44 @@
+package com.phantomquery.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated list. {@code nextCursor} is null on the last page; otherwise
+ * passing it back returns the page that follows.
+ *
+ * Cursors are opaque to clients: they encode the sort key of the last item, a timestamp and the
+ * id that breaks ties between equal timestamps.
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {
+
+    /**
+     * Decoded position: the page continues after the item with this timestamp and id.
+     */
+    public record Cursor(LocalDateTime timestamp, String id) {
+    }
+
+    public static String encode(LocalDateTime timestamp, String id) {
+        String key = timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the cursor was not produced by {@link #encode}
+     */
+    public static Cursor decode(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = key.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+            return new Cursor(LocalDateTime.parse(key.substring(0, separator)), key.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.phantomquery.model;
+
+/**
+ * Rows written by a bulk import.
+ */
+public record ImportResult(long conversations, long messages) {
+}
@@ -1,11 +1,14 @@
 package com.phantomquery.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_conversation_timestamp", columnList = "conversation_id, timestamp, id")
+})
 public class Message {
     @Id
     private String id;
@@ -16,7 +19,12 @@ public class Message {
     private String role; // "user" or "assistant"
     
     private LocalDateTime timestamp;
+
+    // Estimated prompt tokens, computed once when the message is created
+    @Column(name = "token_count")
+    private Integer tokenCount;
     
+    @JsonIgnore
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "conversation_id")
     private Conversation conversation;
@@ -64,6 +72,14 @@ public class Message {
         this.timestamp = timestamp;
     }
 
+    public Integer getTokenCount() {
+        return tokenCount;
+    }
+
+    public void setTokenCount(Integer tokenCount) {
+        this.tokenCount = tokenCount;
+    }
+
     public Conversation getConversation() {
         return conversation;
     }
@@ -0,0 +1,13 @@
+package com.phantomquery.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A message as the chat UI shows it, selected without hydrating the entity.
+ */
+public record MessageView(String id, String role, String content, LocalDateTime timestamp) {
+
+    public static MessageView of(Message message) {
+        return new MessageView(message.getId(), message.getRole(), message.getContent(), message.getTimestamp());
+    }
+}
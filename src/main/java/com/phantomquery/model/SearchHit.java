@@ -0,0 +1,10 @@
+package com.phantomquery.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * One ranked search result; the snippet is the part of the content around the first match.
+ */
+public record SearchHit(String messageId, String conversationId, String role, String snippet,
+                        LocalDateTime timestamp, float score) {
+}
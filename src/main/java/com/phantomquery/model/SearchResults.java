@@ -0,0 +1,9 @@
+package com.phantomquery.model;
+
+import java.util.List;
+
+/**
+ * One page of search results, best first, with the number of messages matching in total.
+ */
+public record SearchResults(long totalHits, List<SearchHit> hits) {
+}
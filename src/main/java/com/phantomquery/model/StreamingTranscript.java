@@ -0,0 +1,14 @@
+package com.phantomquery.model;
+
+import java.time.Duration;
+
+/**
+ * One result from a streaming recognition session.
+ *
+ * @param transcript    top alternative for the result
+ * @param isFinal       true once the recognizer will not revise this result any more
+ * @param stability     likelihood (0.0-1.0) that an interim result will not change; 0 for final results
+ * @param resultEndTime offset of the end of this result from the start of the session's audio
+ */
+public record StreamingTranscript(String transcript, boolean isFinal, float stability, Duration resultEndTime) {
+}
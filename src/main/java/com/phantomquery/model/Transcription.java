@@ -0,0 +1,15 @@
+package com.phantomquery.model;
+
+/**
+ * Result of one batch recognition request.
+ *
+ * @param text          recognized text, empty when no speech was found
+ * @param audioBytes    size of the audio that was recognized
+ * @param latencyMillis time from submission to result, including queueing
+ */
+public record Transcription(String text, int audioBytes, long latencyMillis) {
+
+    public boolean isEmpty() {
+        return text == null || text.isBlank();
+    }
+}
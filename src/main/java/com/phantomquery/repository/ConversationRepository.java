@@ -1,9 +1,40 @@
 package com.phantomquery.repository;
 
 import com.phantomquery.model.Conversation;
+import com.phantomquery.model.ConversationSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Repository
 public interface ConversationRepository extends JpaRepository<Conversation, String> {
+
+    // Touches only the summary columns, so it cannot overwrite concurrent changes to the conversation
+    @Modifying
+    @Transactional
+    @Query("update Conversation c set c.summary = :summary, c.summaryThrough = :summaryThrough, " +
+           "c.summaryTokenCount = :summaryTokenCount where c.id = :id")
+    int updateSummary(@Param("id") String id,
+                      @Param("summary") String summary,
+                      @Param("summaryThrough") LocalDateTime summaryThrough,
+                      @Param("summaryTokenCount") int summaryTokenCount);
+
+    // Keyset pagination, newest first, served by idx_conversations_updated_at
+    @Query("select new com.phantomquery.model.ConversationSummary(c.id, c.title, c.createdAt, c.updatedAt) " +
+           "from Conversation c order by c.updatedAt desc, c.id desc")
+    List<ConversationSummary> findLatestSummaries(Pageable page);
+
+    @Query("select new com.phantomquery.model.ConversationSummary(c.id, c.title, c.createdAt, c.updatedAt) " +
+           "from Conversation c where c.updatedAt < :updatedAt or (c.updatedAt = :updatedAt and c.id < :id) " +
+           "order by c.updatedAt desc, c.id desc")
+    List<ConversationSummary> findSummariesBefore(@Param("updatedAt") LocalDateTime updatedAt,
+                                                  @Param("id") String id,
+                                                  Pageable page);
 } 
\ No newline at end of file
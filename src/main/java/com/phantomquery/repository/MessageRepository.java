@@ -1,11 +1,64 @@
 package com.phantomquery.repository;
 
 import com.phantomquery.model.Message;
+import com.phantomquery.model.MessageView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, String> {
-    List<Message> findByConversation_Id(String conversationId);
-} 
\ No newline at end of file
+    List<Message> findByConversation_IdOrderByTimestampAsc(String conversationId);
+
+    // Keyset walks over whole messages for context assembly, on idx_messages_conversation_timestamp
+    @Query("select m from Message m where m.conversation.id = :conversationId order by m.timestamp desc, m.id desc")
+    List<Message> findLatest(@Param("conversationId") String conversationId, Pageable page);
+
+    @Query("select m from Message m where m.conversation.id = :conversationId " +
+           "and (m.timestamp < :timestamp or (m.timestamp = :timestamp and m.id < :id)) " +
+           "order by m.timestamp desc, m.id desc")
+    List<Message> findBefore(@Param("conversationId") String conversationId,
+                             @Param("timestamp") LocalDateTime timestamp,
+                             @Param("id") String id,
+                             Pageable page);
+
+    @Query("select m from Message m where m.conversation.id = :conversationId order by m.timestamp asc, m.id asc")
+    List<Message> findOldest(@Param("conversationId") String conversationId, Pageable page);
+
+    @Query("select m from Message m where m.conversation.id = :conversationId and m.timestamp > :timestamp " +
+           "order by m.timestamp asc, m.id asc")
+    List<Message> findOldestAfter(@Param("conversationId") String conversationId,
+                                  @Param("timestamp") LocalDateTime timestamp,
+                                  Pageable page);
+
+    @Query("select m from Message m where m.conversation.id = :conversationId " +
+           "and (m.timestamp > :timestamp or (m.timestamp = :timestamp and m.id > :id)) " +
+           "order by m.timestamp asc, m.id asc")
+    List<Message> findAfter(@Param("conversationId") String conversationId,
+                            @Param("timestamp") LocalDateTime timestamp,
+                            @Param("id") String id,
+                            Pageable page);
+
+    // Keyset pagination, newest first, served by idx_messages_conversation_timestamp
+    @Query("select new com.phantomquery.model.MessageView(m.id, m.role, m.content, m.timestamp) " +
+           "from Message m where m.conversation.id = :conversationId order by m.timestamp desc, m.id desc")
+    List<MessageView> findLatestViews(@Param("conversationId") String conversationId, Pageable page);
+
+    @Query("select new com.phantomquery.model.MessageView(m.id, m.role, m.content, m.timestamp) " +
+           "from Message m where m.conversation.id = :conversationId " +
+           "and (m.timestamp < :timestamp or (m.timestamp = :timestamp and m.id < :id)) " +
+           "order by m.timestamp desc, m.id desc")
+    List<MessageView> findViewsBefore(@Param("conversationId") String conversationId,
+                                      @Param("timestamp") LocalDateTime timestamp,
+                                      @Param("id") String id,
+                                      Pageable page);
+
+    @Query("select new com.phantomquery.model.MessageView(m.id, m.role, m.content, m.timestamp) " +
+           "from Message m where m.id in :ids")
+    List<MessageView> findViewsByIdIn(@Param("ids") Collection<String> ids);
+}
@@ -6,8 +6,8 @@ import org.springframework.stereotype.Service;
 public class AIQueryProcessor {
     private final OpenAiService openAiService;
 
-    public AIQueryProcessor() {
-        this.openAiService = new OpenAiService();
+    public AIQueryProcessor(OpenAiService openAiService) {
+        this.openAiService = openAiService;
     }
 
     public String processQuery(String query) {
@@ -0,0 +1,235 @@
+package com.phantomquery.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache of chat completions with a time-to-live. Keys combine the model, temperature,
+ * system prompt and the normalized user prompt, so questions that only differ in case or
+ * whitespace share an answer. When a snapshot file is configured, entries are written on shutdown
+ * and loaded again on startup.
+ */
+@Component
+public class CompletionCache {
+    private static final Logger logger = LoggerFactory.getLogger(CompletionCache.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final String snapshotFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompletionCache(@Value("${openai.cache.max-entries:1000}") int maxEntries,
+                           @Value("${openai.cache.ttl-ms:3600000}") long ttlMs,
+                           @Value("${openai.cache.snapshot-file:}") String snapshotFile) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.snapshotFile = snapshotFile;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > CompletionCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static String key(String model, double temperature, String systemPrompt, String prompt) {
+        return model + '\u0000' + temperature + '\u0000' + systemPrompt + '\u0000' + normalize(prompt);
+    }
+
+    /**
+     * Digest of the conversation context sent along with a prompt, so the same question asked
+     * with different history does not share an answer. Empty for no context.
+     */
+    public static String fingerprint(List<Map<String, String>> context) {
+        if (context.isEmpty()) {
+            return "";
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map<String, String> message : context) {
+                digest.update(message.getOrDefault("role", "").getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(message.getOrDefault("content", "").getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return '\u0000' + HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String normalize(String prompt) {
+        return WHITESPACE.matcher(prompt.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns the cached completion, or null on a miss or when the entry has expired.
+     */
+    public String get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    public void put(String key, String value) {
+        if (!isEnabled() || value == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMs));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long lookups = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMs", ttlMs);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    @PostConstruct
+    public void loadSnapshot() {
+        if (!isEnabled() || snapshotFile.isBlank()) {
+            return;
+        }
+        Path path = Paths.get(snapshotFile);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            List<SnapshotEntry> snapshot = objectMapper.readValue(path.toFile(), new TypeReference<List<SnapshotEntry>>() {});
+            long now = System.currentTimeMillis();
+            int loaded = 0;
+            synchronized (entries) {
+                // The snapshot is written oldest first, so the LRU order survives the restart
+                for (SnapshotEntry saved : snapshot) {
+                    if (saved.expiresAt() > now) {
+                        entries.put(saved.key(), new Entry(saved.value(), saved.expiresAt()));
+                        loaded++;
+                    }
+                }
+            }
+            logger.info("Loaded {} cached completions from {}", loaded, path);
+        } catch (IOException e) {
+            logger.warn("Could not load completion cache snapshot from {}: {}", path, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void saveSnapshot() {
+        if (!isEnabled() || snapshotFile.isBlank()) {
+            return;
+        }
+        List<SnapshotEntry> snapshot = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (!entry.getValue().isExpired(now)) {
+                    snapshot.add(new SnapshotEntry(entry.getKey(), entry.getValue().value, entry.getValue().expiresAt));
+                }
+            }
+        }
+        Path path = Paths.get(snapshotFile);
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // Write to a temporary file first so a crash never leaves a truncated snapshot
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved {} cached completions to {}", snapshot.size(), path);
+        } catch (IOException e) {
+            logger.warn("Could not save completion cache snapshot to {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        final String value;
+        // Wall-clock expiry, so it stays meaningful across restarts
+        final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    record SnapshotEntry(String key, String value, long expiresAt) {
+    }
+}
@@ -0,0 +1,376 @@
+package com.phantomquery.service;
+
+import com.phantomquery.archive.ArchiveStore;
+import com.phantomquery.archive.ArchivedConversation;
+import com.phantomquery.model.Conversation;
+import com.phantomquery.model.ConversationSummary;
+import com.phantomquery.model.Message;
+import com.phantomquery.repository.ConversationRepository;
+import com.phantomquery.repository.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves conversations that have been idle for {@code idleDays} out of the database into an
+ * {@link ArchiveStore}, so the hot tables only hold recent conversations.
+ *
+ * A background pass archives idle conversations in batches. Each one is written to the archive
+ * and forced to disk before its rows are deleted; if it was written to meanwhile, the delete is
+ * rolled back and the archive copy dropped. Archived conversations stay readable through
+ * {@link ConversationService}, and are restored to the database when a new message is added to
+ * one.
+ *
+ * Messages are queued for writing through {@link #write}, which excludes archiving of the same
+ * conversation; otherwise a message queued just after the pending check would be inserted for a
+ * conversation whose rows were already deleted.
+ */
+@Service
+public class ConversationArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationArchiver.class);
+
+    private static final String IDLE_SQL =
+            "SELECT id, updated_at FROM conversations WHERE updated_at < ? ORDER BY updated_at LIMIT ?";
+    private static final String DELETE_MESSAGES_SQL = "DELETE FROM messages WHERE conversation_id = ?";
+    // Only if nothing touched the conversation since it was read for archiving
+    private static final String DELETE_CONVERSATION_SQL = "DELETE FROM conversations WHERE id = ? AND updated_at = ?";
+    private static final String INSERT_CONVERSATION_SQL =
+            "INSERT INTO conversations (id, title, created_at, updated_at, summary, summary_through, summary_token_count) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private record Idle(String id, Timestamp updatedAt) {
+    }
+
+    // Striped per conversation; always taken before this object's monitor
+    private static final int LOCK_STRIPES = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final MessageWriteBehind messageWriter;
+    private final ConversationCache conversationCache;
+    private final MessageSearchIndex searchIndex;
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentBytes;
+    private final int idleDays;
+    private final long scanIntervalMinutes;
+    private final int batchSize;
+
+    private final ScheduledExecutorService scheduler;
+    // Null until opened, and when the archive directory could not be opened
+    private volatile ArchiveStore store;
+
+    private final Object[] conversationLocks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong archivedCount = new AtomicLong();
+    private final AtomicLong restoredCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    public ConversationArchiver(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                ConversationRepository conversationRepository, MessageRepository messageRepository,
+                                MessageWriteBehind messageWriter, ConversationCache conversationCache,
+                                MessageSearchIndex searchIndex,
+                                @Value("${archive.enabled:true}") boolean enabled,
+                                @Value("${archive.directory:./data/archive}") String directory,
+                                @Value("${archive.segment-bytes:67108864}") long segmentBytes,
+                                @Value("${archive.idle-days:30}") int idleDays,
+                                @Value("${archive.scan-interval-minutes:60}") long scanIntervalMinutes,
+                                @Value("${archive.batch-size:100}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.messageWriter = messageWriter;
+        this.conversationCache = conversationCache;
+        this.searchIndex = searchIndex;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.idleDays = idleDays;
+        this.scanIntervalMinutes = scanIntervalMinutes;
+        this.batchSize = batchSize;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            conversationLocks[i] = new Object();
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            // Opened even when archiving is off, so conversations archived earlier stay readable
+            store = new ArchiveStore(directory, segmentBytes);
+        } catch (IOException e) {
+            logger.error("Could not open conversation archive in {}: {}", directory, e.getMessage());
+            return;
+        }
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::archiveIdle, scanIntervalMinutes, scanIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        ArchiveStore current = store;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.warn("Error closing conversation archive: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isArchived(String conversationId) {
+        ArchiveStore current = store;
+        return current != null && current.contains(conversationId);
+    }
+
+    public Optional<ArchivedConversation> find(String conversationId) {
+        ArchiveStore current = store;
+        if (current == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(current.get(conversationId));
+        } catch (IOException e) {
+            logger.error("Could not read archived conversation {}: {}", conversationId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Archived conversations in conversation list order after the given keyset position, or from
+     * the top when {@code id} is null.
+     */
+    public List<ConversationSummary> summariesBefore(LocalDateTime updatedAt, String id, int limit) {
+        ArchiveStore current = store;
+        return current == null ? List.of() : current.summariesBefore(updatedAt, id, limit);
+    }
+
+    /**
+     * Runs {@code write}, which queues messages of the conversation, with archiving of that
+     * conversation held off. If it was archived before the lock was taken, it is restored first.
+     */
+    public void write(String conversationId, Runnable write) {
+        write(List.of(conversationId), write);
+    }
+
+    /**
+     * Like {@link #write(String, Runnable)} for several conversations at once, as a bulk import
+     * writes them. The locks are taken in stripe order, so two such writers never deadlock.
+     */
+    public void write(Collection<String> conversationIds, Runnable write) {
+        int[] stripes = conversationIds.stream().mapToInt(ConversationArchiver::stripe).distinct().sorted().toArray();
+        writeLocked(conversationIds, stripes, 0, write);
+    }
+
+    private void writeLocked(Collection<String> conversationIds, int[] stripes, int held, Runnable write) {
+        if (held < stripes.length) {
+            synchronized (conversationLocks[stripes[held]]) {
+                writeLocked(conversationIds, stripes, held + 1, write);
+            }
+            return;
+        }
+        for (String conversationId : conversationIds) {
+            if (isArchived(conversationId)) {
+                restore(conversationId);
+            }
+        }
+        write.run();
+    }
+
+    /**
+     * Moves an archived conversation back into the database and returns it as stored there.
+     */
+    public Optional<Conversation> restore(String conversationId) {
+        synchronized (lockFor(conversationId)) {
+            synchronized (this) {
+                return restoreLocked(conversationId);
+            }
+        }
+    }
+
+    private Optional<Conversation> restoreLocked(String conversationId) {
+        Optional<ArchivedConversation> found = find(conversationId);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        Conversation conversation = found.get().toConversation();
+        List<Message> messages = conversation.getMessages();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(INSERT_CONVERSATION_SQL, conversation.getId(), conversation.getTitle(),
+                    timestamp(conversation.getCreatedAt()), timestamp(conversation.getUpdatedAt()),
+                    conversation.getSummary(), timestamp(conversation.getSummaryThrough()),
+                    conversation.getSummaryTokenCount());
+            jdbcTemplate.batchUpdate(MessageWriteBehind.INSERT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    MessageWriteBehind.bind(ps, messages.get(i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return messages.size();
+                }
+            });
+        });
+        try {
+            store.remove(conversationId);
+        } catch (IOException e) {
+            // The database copy wins over the archived one
+            logger.warn("Could not drop restored conversation {} from the archive: {}", conversationId, e.getMessage());
+        }
+        for (Message message : messages) {
+            searchIndex.add(message);
+        }
+        conversationCache.conversationDeleted(conversationId);
+        restoredCount.incrementAndGet();
+        logger.info("Restored archived conversation {} with {} messages", conversationId, messages.size());
+        return conversationRepository.findById(conversationId);
+    }
+
+    public void delete(String conversationId) {
+        ArchiveStore current = store;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.remove(conversationId);
+        } catch (IOException e) {
+            logger.error("Could not delete archived conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * Archives conversations idle for longer than the threshold, a batch at a time, until none
+     * are left.
+     */
+    public void archiveIdle() {
+        if (store == null) {
+            return;
+        }
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(idleDays));
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Idle> idle = jdbcTemplate.query(IDLE_SQL,
+                        (rs, row) -> new Idle(rs.getString("id"), rs.getTimestamp("updated_at")), cutoff, batchSize);
+                int archived = 0;
+                for (Idle conversation : idle) {
+                    if (archive(conversation)) {
+                        archived++;
+                    }
+                }
+                if (archived > 0) {
+                    logger.info("Archived {} idle conversations", archived);
+                }
+                // Skipped ones would come back in the next batch
+                if (idle.size() < batchSize || archived == 0) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Conversation archiving failed: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("idleDays", idleDays);
+        stats.put("archived", archivedCount.get());
+        stats.put("restored", restoredCount.get());
+        stats.put("skipped", skippedCount.get());
+        ArchiveStore current = store;
+        if (current != null) {
+            stats.put("store", current.getStats());
+        }
+        return stats;
+    }
+
+    private boolean archive(Idle idle) {
+        synchronized (lockFor(idle.id())) {
+            synchronized (this) {
+                return archiveLocked(idle);
+            }
+        }
+    }
+
+    private boolean archiveLocked(Idle idle) {
+        String conversationId = idle.id();
+        messageWriter.flush(conversationId);
+        Conversation conversation = conversationRepository.findById(conversationId).orElse(null);
+        if (conversation == null) {
+            return false;
+        }
+        List<Message> messages = messageRepository.findByConversation_IdOrderByTimestampAsc(conversationId);
+        try {
+            store.put(ArchivedConversation.of(conversation, messages));
+        } catch (IOException e) {
+            logger.error("Could not archive conversation {}: {}", conversationId, e.getMessage());
+            return false;
+        }
+
+        Boolean deleted = transactionTemplate.execute(status -> {
+            jdbcTemplate.update(DELETE_MESSAGES_SQL, conversationId);
+            if (jdbcTemplate.update(DELETE_CONVERSATION_SQL, conversationId, idle.updatedAt()) == 0
+                    || !messageWriter.pending(conversationId).isEmpty()) {
+                status.setRollbackOnly();
+                return false;
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(deleted)) {
+            // Written to while it was being archived; keep it in the database
+            delete(conversationId);
+            skippedCount.incrementAndGet();
+            return false;
+        }
+        searchIndex.removeConversation(conversationId);
+        conversationCache.conversationDeleted(conversationId);
+        archivedCount.incrementAndGet();
+        return true;
+    }
+
+    private Object lockFor(String conversationId) {
+        return conversationLocks[stripe(conversationId)];
+    }
+
+    private static int stripe(String conversationId) {
+        return Math.floorMod(conversationId.hashCode(), LOCK_STRIPES);
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+}
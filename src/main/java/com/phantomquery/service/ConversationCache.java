@@ -0,0 +1,188 @@
+package com.phantomquery.service;
+
+import com.phantomquery.model.ConversationSummary;
+import com.phantomquery.model.MessageView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Read cache for what the chat UI reloads after every exchange: the first page of the
+ * conversation list and the latest messages of recently used conversations. Both are kept
+ * current by {@link ConversationService} writing through to them instead of dropping them, so a
+ * chatty session keeps hitting the cache. At most {@code maxConversations} message windows are
+ * kept, least recently used first out.
+ *
+ * A load that raced with a write is returned but not stored, since it may predate the write.
+ */
+@Service
+public class ConversationCache {
+
+    // Enough rows for the largest page plus the one that tells whether another page follows
+    static final int WINDOW = ConversationService.MAX_PAGE_SIZE + 1;
+
+    // Newest first, ties broken by id as in the keyset queries
+    private static final Comparator<MessageView> NEWEST_MESSAGE_FIRST =
+            Comparator.comparing(MessageView::timestamp).thenComparing(MessageView::id).reversed();
+    private static final Comparator<ConversationSummary> NEWEST_CONVERSATION_FIRST =
+            Comparator.comparing(ConversationSummary::updatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                    .thenComparing(ConversationSummary::id).reversed();
+
+    /**
+     * The newest rows of a list, newest first; {@code complete} when no older rows exist.
+     */
+    private record Window<T>(List<T> rows, boolean complete) {
+    }
+
+    private final int maxConversations;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Window<MessageView>> messageWindows;
+    private Window<ConversationSummary> conversationList;
+    // Bumped by every write, so loads can tell whether one happened meanwhile
+    private long version;
+
+    private long messageHits;
+    private long messageMisses;
+    private long listHits;
+    private long listMisses;
+
+    public ConversationCache(@Value("${cache.conversations.max-entries:64}") int maxConversations) {
+        this.maxConversations = maxConversations;
+        this.messageWindows = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Window<MessageView>> eldest) {
+                return size() > ConversationCache.this.maxConversations;
+            }
+        };
+    }
+
+    /**
+     * Up to {@code count} of the conversation's newest messages, newest first, from the cache or
+     * else from {@code loader}, which must return the newest {@link #WINDOW} messages.
+     */
+    public List<MessageView> latestMessages(String conversationId, int count, Supplier<List<MessageView>> loader) {
+        long loadVersion;
+        synchronized (this) {
+            Window<MessageView> window = messageWindows.get(conversationId);
+            if (window != null && (window.complete() || window.rows().size() >= count)) {
+                messageHits++;
+                return head(window.rows(), count);
+            }
+            messageMisses++;
+            loadVersion = version;
+        }
+        List<MessageView> rows = loader.get();
+        synchronized (this) {
+            if (version == loadVersion) {
+                messageWindows.put(conversationId, new Window<>(List.copyOf(head(rows, WINDOW)), rows.size() < WINDOW));
+            }
+        }
+        return head(rows, count);
+    }
+
+    /**
+     * Up to {@code count} of the most recently active conversations, from the cache or else from
+     * {@code loader}, which must return the newest {@link #WINDOW} conversations.
+     */
+    public List<ConversationSummary> latestConversations(int count, Supplier<List<ConversationSummary>> loader) {
+        long loadVersion;
+        synchronized (this) {
+            if (conversationList != null && (conversationList.complete() || conversationList.rows().size() >= count)) {
+                listHits++;
+                return head(conversationList.rows(), count);
+            }
+            listMisses++;
+            loadVersion = version;
+        }
+        List<ConversationSummary> rows = loader.get();
+        synchronized (this) {
+            if (version == loadVersion) {
+                conversationList = new Window<>(List.copyOf(head(rows, WINDOW)), rows.size() < WINDOW);
+            }
+        }
+        return head(rows, count);
+    }
+
+    public synchronized void conversationCreated(ConversationSummary conversation) {
+        version++;
+        if (conversationList != null) {
+            conversationList = insert(conversationList, conversation, NEWEST_CONVERSATION_FIRST);
+        }
+    }
+
+    /**
+     * Adds the message to its conversation's window and moves the conversation to the top of the
+     * list, as the database will once the message is stored.
+     */
+    public synchronized void messageAdded(ConversationSummary conversation, MessageView message) {
+        version++;
+        Window<MessageView> window = messageWindows.get(conversation.id());
+        if (window != null) {
+            messageWindows.put(conversation.id(), insert(window, message, NEWEST_MESSAGE_FIRST));
+        }
+        if (conversationList != null) {
+            List<ConversationSummary> rows = new ArrayList<>(conversationList.rows());
+            rows.removeIf(row -> row.id().equals(conversation.id()));
+            ConversationSummary touched = new ConversationSummary(conversation.id(), conversation.title(),
+                    conversation.createdAt(), message.timestamp());
+            conversationList = insert(new Window<>(rows, conversationList.complete()), touched, NEWEST_CONVERSATION_FIRST);
+        }
+    }
+
+    public synchronized void conversationDeleted(String conversationId) {
+        version++;
+        messageWindows.remove(conversationId);
+        // Reloaded rather than patched: the row that would move up into the window is unknown
+        conversationList = null;
+    }
+
+    /**
+     * Drops everything, after writes that bypassed the cache.
+     */
+    public synchronized void clear() {
+        version++;
+        messageWindows.clear();
+        conversationList = null;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedConversations", messageWindows.size());
+        stats.put("maxConversations", maxConversations);
+        stats.put("messageHits", messageHits);
+        stats.put("messageMisses", messageMisses);
+        stats.put("messageHitRate", hitRate(messageHits, messageMisses));
+        stats.put("listHits", listHits);
+        stats.put("listMisses", listMisses);
+        stats.put("listHitRate", hitRate(listHits, listMisses));
+        return stats;
+    }
+
+    private static <T> Window<T> insert(Window<T> window, T row, Comparator<T> order) {
+        List<T> rows = new ArrayList<>(window.rows().size() + 1);
+        rows.addAll(window.rows());
+        rows.add(row);
+        rows.sort(order);
+        if (rows.size() <= WINDOW) {
+            return new Window<>(List.copyOf(rows), window.complete());
+        }
+        return new Window<>(List.copyOf(rows.subList(0, WINDOW)), false);
+    }
+
+    private static <T> List<T> head(List<T> rows, int count) {
+        return rows.size() <= count ? rows : rows.subList(0, count);
+    }
+
+    private static double hitRate(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
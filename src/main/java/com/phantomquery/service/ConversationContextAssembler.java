@@ -0,0 +1,290 @@
+package com.phantomquery.service;
+
+import com.phantomquery.model.Conversation;
+import com.phantomquery.model.Message;
+import com.phantomquery.repository.ConversationRepository;
+import com.phantomquery.repository.MessageRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Builds the history sent with each question within a fixed token budget. The most recent turns
+ * that fit go in verbatim; everything older is represented by a rolling summary stored on the
+ * conversation. The summary is extended in the background whenever turns fall out of the
+ * verbatim window, so a request never waits for it and prompt size stays flat however long the
+ * conversation gets.
+ *
+ * History is read newest first in keyset pages and only as far as the budget reaches, plus one
+ * message to tell whether anything older still needs summarizing; the summarizer reads forward
+ * from the end of the summary. Neither reads the whole conversation.
+ */
+@Service
+public class ConversationContextAssembler {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationContextAssembler.class);
+    private static final int PAGE_SIZE = 32;
+
+    /**
+     * The verbatim window, oldest first, and whether an unsummarized message precedes it.
+     */
+    private record Window(List<Message> messages, boolean overflow) {
+    }
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final MessageWriteBehind messageWriter;
+    private final OpenAiService openAiService;
+    private final int tokenBudget;
+    private final int summaryMaxTokens;
+
+    private final ExecutorService summarizer;
+    // Conversations with a summary update queued or running
+    private final Set<String> pendingSummaries = ConcurrentHashMap.newKeySet();
+
+    public ConversationContextAssembler(ConversationRepository conversationRepository,
+                                        MessageRepository messageRepository,
+                                        MessageWriteBehind messageWriter,
+                                        OpenAiService openAiService,
+                                        @Value("${openai.context.token-budget:2000}") int tokenBudget,
+                                        @Value("${openai.context.summary-max-tokens:400}") int summaryMaxTokens) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.messageWriter = messageWriter;
+        this.openAiService = openAiService;
+        this.tokenBudget = tokenBudget;
+        this.summaryMaxTokens = summaryMaxTokens;
+        this.summarizer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "context-summarizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        summarizer.shutdownNow();
+    }
+
+    /**
+     * Context for the next question in a conversation, oldest first, as role/content maps.
+     * Must be called before the question itself is saved.
+     */
+    public List<Map<String, String>> assemble(String conversationId) {
+        Conversation conversation = conversationRepository.findById(conversationId).orElse(null);
+        if (conversation == null) {
+            return List.of();
+        }
+        String summary = conversation.getSummary();
+        Window window = window(conversationId, tokenBudget - summaryTokens(conversation), conversation.getSummaryThrough());
+
+        List<Map<String, String>> context = new ArrayList<>();
+        if (StringUtils.hasText(summary)) {
+            context.add(Map.of("role", "system", "content", "Summary of the earlier conversation: " + summary));
+        }
+        for (Message message : window.messages()) {
+            context.add(Map.of("role", message.getRole(), "content", message.getContent()));
+        }
+
+        if (window.overflow()) {
+            scheduleSummary(conversationId);
+        }
+        return context;
+    }
+
+    /**
+     * The newest messages that fit the budget, never reaching back into turns the summary already
+     * covers.
+     */
+    private Window window(String conversationId, int budget, LocalDateTime summaryThrough) {
+        NewestFirst history = new NewestFirst(conversationId);
+        List<Message> messages = new ArrayList<>();
+        int used = 0;
+        boolean overflow = false;
+        Message message;
+        while ((message = history.next()) != null) {
+            if (summaryThrough != null && !message.getTimestamp().isAfter(summaryThrough)) {
+                break;
+            }
+            int tokens = tokens(message);
+            if (used + tokens > budget) {
+                overflow = true;
+                break;
+            }
+            used += tokens;
+            messages.add(message);
+        }
+        Collections.reverse(messages);
+        return new Window(messages, overflow);
+    }
+
+    private void scheduleSummary(String conversationId) {
+        if (!pendingSummaries.add(conversationId)) {
+            return;
+        }
+        try {
+            summarizer.execute(() -> {
+                try {
+                    updateSummary(conversationId);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to update summary for conversation {}: {}", conversationId, e.getMessage());
+                } finally {
+                    pendingSummaries.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingSummaries.remove(conversationId);
+        }
+    }
+
+    /**
+     * Folds the turns that left the window into the summary, at most one budget's worth of
+     * turns per model call so the summarization prompt stays bounded too.
+     */
+    private void updateSummary(String conversationId) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Conversation conversation = conversationRepository.findById(conversationId).orElse(null);
+            if (conversation == null) {
+                return;
+            }
+            LocalDateTime summaryThrough = conversation.getSummaryThrough();
+            Window window = window(conversationId, tokenBudget - summaryTokens(conversation), summaryThrough);
+            if (!window.overflow()) {
+                return;
+            }
+            // Everything older than the window is read from the database
+            messageWriter.flush(conversationId);
+            Message windowStart = window.messages().isEmpty() ? null : window.messages().get(0);
+            List<Message> pending = unsummarized(conversationId, summaryThrough, windowStart);
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            StringBuilder transcript = new StringBuilder();
+            for (Message message : pending) {
+                transcript.append(message.getRole()).append(": ").append(message.getContent()).append('\n');
+            }
+            Message last = pending.get(pending.size() - 1);
+
+            String summary = openAiService.summarize(conversation.getSummary(), transcript.toString(), summaryMaxTokens);
+            conversationRepository.updateSummary(conversationId, summary, last.getTimestamp(), TokenEstimator.estimate(summary));
+            logger.info("Updated summary for conversation {} through {}", conversationId, last.getTimestamp());
+        }
+    }
+
+    /**
+     * The oldest messages after the summary and before {@code windowStart} (or up to the newest
+     * when null), oldest first, up to one budget's worth; always at least one if there is any.
+     */
+    private List<Message> unsummarized(String conversationId, LocalDateTime summaryThrough, Message windowStart) {
+        List<Message> messages = new ArrayList<>();
+        int used = 0;
+        List<Message> page = summaryThrough == null
+                ? messageRepository.findOldest(conversationId, PageRequest.of(0, PAGE_SIZE))
+                : messageRepository.findOldestAfter(conversationId, summaryThrough, PageRequest.of(0, PAGE_SIZE));
+        while (true) {
+            for (Message message : page) {
+                if (windowStart != null && !isOlder(message, windowStart)) {
+                    return messages;
+                }
+                int tokens = tokens(message);
+                if (!messages.isEmpty() && used + tokens > tokenBudget) {
+                    return messages;
+                }
+                used += tokens;
+                messages.add(message);
+            }
+            if (page.size() < PAGE_SIZE) {
+                return messages;
+            }
+            Message last = page.get(page.size() - 1);
+            page = messageRepository.findAfter(conversationId, last.getTimestamp(), last.getId(), PageRequest.of(0, PAGE_SIZE));
+        }
+    }
+
+    private static boolean isOlder(Message message, Message than) {
+        int byTime = message.getTimestamp().compareTo(than.getTimestamp());
+        return byTime < 0 || (byTime == 0 && message.getId().compareTo(than.getId()) < 0);
+    }
+
+    private static int summaryTokens(Conversation conversation) {
+        if (!StringUtils.hasText(conversation.getSummary())) {
+            return 0;
+        }
+        Integer cached = conversation.getSummaryTokenCount();
+        return cached != null ? cached : TokenEstimator.estimate(conversation.getSummary());
+    }
+
+    private static int tokens(Message message) {
+        Integer cached = message.getTokenCount();
+        if (cached == null) {
+            // Messages saved before token counts existed
+            cached = TokenEstimator.estimate(message.getContent());
+            message.setTokenCount(cached);
+        }
+        return cached;
+    }
+
+    /**
+     * A conversation's messages newest first: those still queued for writing, which are newer
+     * than stored ones, then stored ones read a keyset page at a time as they are needed.
+     */
+    private final class NewestFirst {
+        private final String conversationId;
+        private final List<Message> queued;
+        private final Set<String> queuedIds = new HashSet<>();
+        private int queuedIndex;
+        private List<Message> page = List.of();
+        private int pageIndex;
+        private boolean exhausted;
+
+        NewestFirst(String conversationId) {
+            this.conversationId = conversationId;
+            this.queued = new ArrayList<>(messageWriter.pending(conversationId));
+            Collections.reverse(queued);
+            for (Message message : queued) {
+                queuedIds.add(message.getId());
+            }
+        }
+
+        Message next() {
+            if (queuedIndex < queued.size()) {
+                return queued.get(queuedIndex++);
+            }
+            while (true) {
+                if (pageIndex < page.size()) {
+                    Message message = page.get(pageIndex++);
+                    // Written since the queue was read
+                    if (!queuedIds.contains(message.getId())) {
+                        return message;
+                    }
+                    continue;
+                }
+                if (exhausted) {
+                    return null;
+                }
+                Message last = page.isEmpty() ? null : page.get(page.size() - 1);
+                page = last == null
+                        ? messageRepository.findLatest(conversationId, PageRequest.of(0, PAGE_SIZE))
+                        : messageRepository.findBefore(conversationId, last.getTimestamp(), last.getId(), PageRequest.of(0, PAGE_SIZE));
+                pageIndex = 0;
+                exhausted = page.size() < PAGE_SIZE;
+            }
+        }
+    }
+}
@@ -1,58 +1,284 @@
 package com.phantomquery.service;
 
+import com.phantomquery.archive.ArchivedConversation;
 import com.phantomquery.model.Conversation;
+import com.phantomquery.model.ConversationSummary;
+import com.phantomquery.model.CursorPage;
 import com.phantomquery.model.Message;
+import com.phantomquery.model.MessageView;
 import com.phantomquery.repository.ConversationRepository;
 import com.phantomquery.repository.MessageRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 public class ConversationService {
+    public static final int MAX_PAGE_SIZE = 100;
+
+    // Newest first, ties broken by id as in the keyset queries
+    private static final Comparator<MessageView> NEWEST_FIRST =
+            Comparator.comparing(MessageView::timestamp).thenComparing(MessageView::id).reversed();
+    private static final Comparator<ConversationSummary> NEWEST_CONVERSATION_FIRST =
+            Comparator.comparing(ConversationSummary::updatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                    .thenComparing(ConversationSummary::id).reversed();
+
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
     private final OpenAiService openAiService;
+    private final ConversationContextAssembler contextAssembler;
+    // Messages are saved write-behind; reads merge in what is still queued
+    private final MessageWriteBehind messageWriter;
+    private final MessageSearchIndex searchIndex;
+    // First pages of the conversation list and of active conversations, updated on every write
+    private final ConversationCache conversationCache;
+    // Idle conversations moved out of the database; still listed and readable
+    private final ConversationArchiver archiver;
 
     @Autowired
     public ConversationService(ConversationRepository conversationRepository,
                              MessageRepository messageRepository,
-                             OpenAiService openAiService) {
+                             OpenAiService openAiService,
+                             ConversationContextAssembler contextAssembler,
+                             MessageWriteBehind messageWriter,
+                             MessageSearchIndex searchIndex,
+                             ConversationCache conversationCache,
+                             ConversationArchiver archiver) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
         this.openAiService = openAiService;
+        this.contextAssembler = contextAssembler;
+        this.messageWriter = messageWriter;
+        this.searchIndex = searchIndex;
+        this.conversationCache = conversationCache;
+        this.archiver = archiver;
     }
 
     public Conversation createConversation(String title) {
-        Conversation conversation = new Conversation(title);
-        return conversationRepository.save(conversation);
+        Conversation conversation = conversationRepository.save(new Conversation(title));
+        conversationCache.conversationCreated(summary(conversation));
+        return conversation;
     }
 
     public Optional<Conversation> getConversation(String id) {
-        return conversationRepository.findById(id);
+        // The entity's message collection is loaded from the database, so queued messages go first
+        messageWriter.flush(id);
+        return conversationRepository.findById(id)
+                .or(() -> archiver.find(id).map(ArchivedConversation::toConversation));
+    }
+
+    /**
+     * Conversations by most recent activity, {@code limit} at a time, without loading messages.
+     *
+     * @throws IllegalArgumentException for a cursor that was not issued by this method
+     */
+    public CursorPage<ConversationSummary> getConversationPage(String cursor, int limit) {
+        int size = pageSize(limit);
+        // One extra row tells whether another page follows
+        PageRequest page = PageRequest.of(0, size + 1);
+        List<ConversationSummary> rows;
+        if (cursor == null) {
+            rows = conversationCache.latestConversations(size + 1, () -> withArchived(
+                    conversationRepository.findLatestSummaries(PageRequest.of(0, ConversationCache.WINDOW)),
+                    null, null, ConversationCache.WINDOW));
+        } else {
+            CursorPage.Cursor position = CursorPage.decode(cursor);
+            rows = withArchived(conversationRepository.findSummariesBefore(position.timestamp(), position.id(), page),
+                    position.timestamp(), position.id(), size + 1);
+        }
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null);
+        }
+        List<ConversationSummary> items = rows.subList(0, size);
+        ConversationSummary last = items.get(size - 1);
+        return new CursorPage<>(List.copyOf(items), CursorPage.encode(last.updatedAt(), last.id()));
     }
 
-    public List<Conversation> getAllConversations() {
-        return conversationRepository.findAll();
+    /**
+     * The first {@code count} of the database rows and the archived conversations after the same
+     * keyset position, merged in list order.
+     */
+    private List<ConversationSummary> withArchived(List<ConversationSummary> rows, LocalDateTime updatedAt,
+                                                   String id, int count) {
+        List<ConversationSummary> archived = archiver.summariesBefore(updatedAt, id, count);
+        if (archived.isEmpty()) {
+            return rows;
+        }
+        Set<String> ids = new HashSet<>();
+        List<ConversationSummary> merged = new ArrayList<>(rows);
+        for (ConversationSummary row : rows) {
+            ids.add(row.id());
+        }
+        for (ConversationSummary row : archived) {
+            if (ids.add(row.id())) {
+                merged.add(row);
+            }
+        }
+        merged.sort(NEWEST_CONVERSATION_FIRST);
+        return merged.size() <= count ? merged : merged.subList(0, count);
     }
 
     public Message addUserMessage(String conversationId, String content) {
-        Message message = new Message(content, "user", conversationId);
-        message = messageRepository.save(message);
+        Conversation conversation = findOrRestore(conversationId);
+        // Earlier turns, trimmed to the token budget; assembled before the question is saved
+        List<Map<String, String>> context = contextAssembler.assemble(conversationId);
+        save(newMessage(conversation, content, "user"));
         
         // Get AI response
-        String aiResponse = openAiService.getCompletion(content);
-        Message aiMessage = new Message(aiResponse, "assistant", conversationId);
-        return messageRepository.save(aiMessage);
+        String aiResponse = openAiService.getCompletion(context, content);
+        return save(newMessage(conversation, aiResponse, "assistant"));
+    }
+
+    /**
+     * Like {@link #addUserMessage} but streams the AI response: each token is handed to
+     * {@code onDelta} as it arrives, and the assistant message is saved once, when complete.
+     */
+    public CompletableFuture<Message> addUserMessageStreaming(String conversationId, String content, Consumer<String> onDelta) {
+        Conversation conversation = findOrRestore(conversationId);
+        List<Map<String, String>> context = contextAssembler.assemble(conversationId);
+        save(newMessage(conversation, content, "user"));
+
+        return openAiService.streamCompletion(context, content, onDelta)
+                .thenApply(aiResponse -> save(newMessage(conversation, aiResponse, "assistant")));
+    }
+
+    /**
+     * The conversation, moved back into the database first if it was archived, or null.
+     */
+    private Conversation findOrRestore(String conversationId) {
+        Optional<Conversation> conversation = conversationRepository.findById(conversationId);
+        if (conversation.isEmpty() && archiver.isArchived(conversationId)) {
+            conversation = archiver.restore(conversationId);
+        }
+        return conversation.orElse(null);
     }
 
-    public List<Message> getConversationMessages(String conversationId) {
-        return messageRepository.findByConversation_Id(conversationId);
+    private Message save(Message message) {
+        Conversation conversation = message.getConversation();
+        if (conversation == null) {
+            searchIndex.add(message);
+            messageWriter.save(message);
+            return message;
+        }
+        // Queued with archiving of the conversation held off, so its rows are still there when the
+        // message is inserted
+        archiver.write(conversation.getId(), () -> {
+            // Searchable right away, not only once the write-behind queue has stored it
+            searchIndex.add(message);
+            messageWriter.save(message);
+            conversationCache.messageAdded(summary(conversation), MessageView.of(message));
+        });
+        return message;
+    }
+
+    private static ConversationSummary summary(Conversation conversation) {
+        return new ConversationSummary(conversation.getId(), conversation.getTitle(),
+                conversation.getCreatedAt(), conversation.getUpdatedAt());
+    }
+
+    private Message newMessage(Conversation conversation, String content, String role) {
+        Message message = new Message(content, role, conversation != null ? conversation.getId() : null);
+        message.setConversation(conversation);
+        message.setTokenCount(TokenEstimator.estimate(content));
+        return message;
+    }
+
+    /**
+     * The latest {@code limit} messages of a conversation in chronological order; the cursor
+     * pages back towards older messages. The first page includes messages still queued for
+     * writing. Archived conversations are paged from the archive.
+     *
+     * @throws IllegalArgumentException for a cursor that was not issued by this method
+     */
+    public CursorPage<MessageView> getMessagePage(String conversationId, String cursor, int limit) {
+        int size = pageSize(limit);
+        PageRequest page = PageRequest.of(0, size + 1);
+        List<MessageView> rows;
+        if (archiver.isArchived(conversationId)) {
+            rows = archivedMessages(conversationId, cursor == null ? null : CursorPage.decode(cursor), size + 1);
+        } else if (cursor == null) {
+            rows = conversationCache.latestMessages(conversationId, size + 1, () -> withPending(conversationId,
+                    messageRepository.findLatestViews(conversationId, PageRequest.of(0, ConversationCache.WINDOW))));
+        } else {
+            CursorPage.Cursor position = CursorPage.decode(cursor);
+            rows = messageRepository.findViewsBefore(conversationId, position.timestamp(), position.id(), page);
+        }
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            MessageView oldest = rows.get(size - 1);
+            nextCursor = CursorPage.encode(oldest.timestamp(), oldest.id());
+        }
+        List<MessageView> items = new ArrayList<>(rows);
+        Collections.reverse(items);
+        return new CursorPage<>(items, nextCursor);
+    }
+
+    /**
+     * Up to {@code count} archived messages before {@code position}, newest first.
+     */
+    private List<MessageView> archivedMessages(String conversationId, CursorPage.Cursor position, int count) {
+        List<ArchivedConversation.ArchivedMessage> messages = archiver.find(conversationId)
+                .map(ArchivedConversation::messages)
+                .orElse(List.of());
+        List<MessageView> rows = new ArrayList<>(Math.min(count, messages.size()));
+        // Archived messages are stored oldest first
+        for (int i = messages.size() - 1; i >= 0 && rows.size() < count; i--) {
+            ArchivedConversation.ArchivedMessage message = messages.get(i);
+            MessageView view = new MessageView(message.id(), message.role(), message.content(), message.timestamp());
+            if (position == null || NEWEST_FIRST.compare(view,
+                    new MessageView(position.id(), null, null, position.timestamp())) > 0) {
+                rows.add(view);
+            }
+        }
+        return rows;
+    }
+
+    private List<MessageView> withPending(String conversationId, List<MessageView> newestFirst) {
+        List<Message> pending = messageWriter.pending(conversationId);
+        if (pending.isEmpty()) {
+            return newestFirst;
+        }
+        Set<String> ids = new HashSet<>();
+        List<MessageView> merged = new ArrayList<>(newestFirst);
+        for (MessageView view : newestFirst) {
+            ids.add(view.id());
+        }
+        for (Message message : pending) {
+            if (ids.add(message.getId())) {
+                merged.add(MessageView.of(message));
+            }
+        }
+        merged.sort(NEWEST_FIRST);
+        return merged;
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
     public void deleteConversation(String id) {
+        // Queued messages would otherwise be inserted after their conversation is gone
+        messageWriter.flush(id);
         conversationRepository.deleteById(id);
+        archiver.delete(id);
+        searchIndex.removeConversation(id);
+        conversationCache.conversationDeleted(id);
+    }
+
+    public Map<String, Object> getCacheStats() {
+        return conversationCache.getStats();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,402 @@
+package com.phantomquery.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.phantomquery.archive.ArchivedConversation;
+import com.phantomquery.model.ConversationSummary;
+import com.phantomquery.model.ImportResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bulk export and import of conversations as NDJSON, one JSON object per line.
+ *
+ * An export is one {@code "type":"conversation"} line per conversation, followed by a
+ * {@code "type":"message"} line for each of its messages. Conversations are written before
+ * messages, so a stream can be imported in order. Rows are read through database cursors and
+ * written straight to the output through a JSON generator, with archived conversations after the
+ * database ones; memory use does not depend on the size of the history.
+ *
+ * An import parses the stream one line at a time and upserts rows by id in JDBC batches of
+ * {@code batchSize}, one transaction per batch, so importing the same file twice is harmless.
+ * An archived conversation that the stream writes to is restored first and the imported rows are
+ * merged over it, so archived messages missing from the stream are kept. A malformed line stops
+ * the import; batches committed before it are kept.
+ */
+@Service
+public class ConversationTransferService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationTransferService.class);
+
+    private static final int EXPORT_FETCH_SIZE = 500;
+    private static final String CONVERSATION_COLUMNS =
+            "id, title, created_at, updated_at, summary, summary_through, summary_token_count";
+    private static final String MESSAGE_COLUMNS = "id, content, role, timestamp, token_count, conversation_id";
+
+    private static final String EXPORT_CONVERSATIONS_SQL = "SELECT " + CONVERSATION_COLUMNS + " FROM conversations";
+    private static final String EXPORT_MESSAGES_SQL =
+            "SELECT " + MESSAGE_COLUMNS + " FROM messages ORDER BY conversation_id, timestamp, id";
+    private static final String EXPORT_CONVERSATION_SQL = EXPORT_CONVERSATIONS_SQL + " WHERE id = ?";
+    private static final String EXPORT_CONVERSATION_MESSAGES_SQL =
+            "SELECT " + MESSAGE_COLUMNS + " FROM messages WHERE conversation_id = ? ORDER BY timestamp, id";
+
+    // H2 upserts, so a repeated import replaces rather than fails
+    private static final String MERGE_CONVERSATION_SQL =
+            "MERGE INTO conversations (" + CONVERSATION_COLUMNS + ") KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_MESSAGE_SQL =
+            "MERGE INTO messages (" + MESSAGE_COLUMNS + ") KEY (id) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString ID = new SerializedString("id");
+
+    private final JdbcTemplate jdbcTemplate;
+    // Separate from the shared template so the fetch size only applies to exports
+    private final JdbcTemplate exportTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageWriteBehind messageWriter;
+    private final ConversationArchiver archiver;
+    private final ConversationCache conversationCache;
+    private final MessageSearchIndex searchIndex;
+    private final int batchSize;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public ConversationTransferService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                       MessageWriteBehind messageWriter, ConversationArchiver archiver,
+                                       ConversationCache conversationCache, MessageSearchIndex searchIndex,
+                                       @Value("${transfer.import.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exportTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.exportTemplate.setFetchSize(EXPORT_FETCH_SIZE);
+        this.transactionTemplate = transactionTemplate;
+        this.messageWriter = messageWriter;
+        this.archiver = archiver;
+        this.conversationCache = conversationCache;
+        this.searchIndex = searchIndex;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Writes every conversation, or only {@code conversationId} when not null, to {@code out}.
+     */
+    public void export(String conversationId, OutputStream out) throws IOException {
+        // Queued messages would otherwise be missing from the export
+        if (conversationId == null) {
+            messageWriter.flushAll();
+        } else {
+            messageWriter.flush(conversationId);
+        }
+        try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            try {
+                if (conversationId == null) {
+                    exportTemplate.query(EXPORT_CONVERSATIONS_SQL, rs -> writeConversation(generator, rs));
+                    exportTemplate.query(EXPORT_MESSAGES_SQL, rs -> writeMessage(generator, rs));
+                } else {
+                    exportTemplate.query(EXPORT_CONVERSATION_SQL, rs -> writeConversation(generator, rs), conversationId);
+                    exportTemplate.query(EXPORT_CONVERSATION_MESSAGES_SQL, rs -> writeMessage(generator, rs), conversationId);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            exportArchived(conversationId, generator);
+            generator.writeRaw('\n');
+        }
+    }
+
+    /**
+     * Imports an NDJSON stream as written by {@link #export}. Rows are committed a batch at a
+     * time; when a line or batch fails, batches committed before it stay imported.
+     *
+     * @throws IllegalArgumentException for a line that is not a conversation or message object
+     */
+    public ImportResult importFrom(InputStream in) throws IOException {
+        Batches batches = new Batches();
+        try {
+            try (JsonParser parser = jsonFactory.createParser(in)) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new IllegalArgumentException("Expected a JSON object at line " + parser.currentLocation().getLineNr());
+                    }
+                    readLine(parser, batches);
+                }
+            }
+            batches.flush();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage(), e);
+        } finally {
+            // Batches committed before a failure stay imported, so caches must not keep serving the old rows
+            if (batches.batchCount > 0) {
+                conversationCache.clear();
+                searchIndex.rebuildAsync();
+            }
+        }
+        logger.info("Imported {} conversations and {} messages in {} batches",
+                batches.conversationCount, batches.messageCount, batches.batchCount);
+        return new ImportResult(batches.conversationCount, batches.messageCount);
+    }
+
+    private void exportArchived(String conversationId, JsonGenerator generator) throws IOException {
+        if (conversationId != null) {
+            if (archiver.isArchived(conversationId)) {
+                ArchivedConversation archived = archiver.find(conversationId).orElse(null);
+                if (archived != null) {
+                    writeArchived(generator, archived);
+                }
+            }
+            return;
+        }
+        // One archived conversation in memory at a time, walking the archive in list order
+        LocalDateTime updatedAt = null;
+        String id = null;
+        List<ConversationSummary> page;
+        do {
+            page = archiver.summariesBefore(updatedAt, id, 100);
+            for (ConversationSummary summary : page) {
+                ArchivedConversation archived = archiver.find(summary.id()).orElse(null);
+                if (archived != null) {
+                    writeArchived(generator, archived);
+                }
+                updatedAt = summary.updatedAt();
+                id = summary.id();
+            }
+        } while (!page.isEmpty());
+    }
+
+    private static void writeArchived(JsonGenerator generator, ArchivedConversation archived) throws IOException {
+        writeConversation(generator, archived.id(), archived.title(), archived.createdAt(), archived.updatedAt(),
+                archived.summary(), archived.summaryThrough(), archived.summaryTokenCount());
+        for (ArchivedConversation.ArchivedMessage message : archived.messages()) {
+            writeMessage(generator, message.id(), archived.id(), message.role(), message.content(),
+                    message.timestamp(), message.tokenCount());
+        }
+    }
+
+    private static void writeConversation(JsonGenerator generator, ResultSet rs) throws SQLException {
+        try {
+            writeConversation(generator, rs.getString("id"), rs.getString("title"),
+                    time(rs.getTimestamp("created_at")), time(rs.getTimestamp("updated_at")),
+                    rs.getString("summary"), time(rs.getTimestamp("summary_through")),
+                    rs.getObject("summary_token_count", Integer.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeMessage(JsonGenerator generator, ResultSet rs) throws SQLException {
+        try {
+            writeMessage(generator, rs.getString("id"), rs.getString("conversation_id"), rs.getString("role"),
+                    rs.getString("content"), time(rs.getTimestamp("timestamp")),
+                    rs.getObject("token_count", Integer.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeConversation(JsonGenerator generator, String id, String title, LocalDateTime createdAt,
+                                          LocalDateTime updatedAt, String summary, LocalDateTime summaryThrough,
+                                          Integer summaryTokenCount) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(TYPE);
+        generator.writeString("conversation");
+        generator.writeFieldName(ID);
+        generator.writeString(id);
+        writeString(generator, "title", title);
+        writeTime(generator, "createdAt", createdAt);
+        writeTime(generator, "updatedAt", updatedAt);
+        writeString(generator, "summary", summary);
+        writeTime(generator, "summaryThrough", summaryThrough);
+        if (summaryTokenCount != null) {
+            generator.writeNumberField("summaryTokenCount", summaryTokenCount);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeMessage(JsonGenerator generator, String id, String conversationId, String role,
+                                     String content, LocalDateTime timestamp, Integer tokenCount) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(TYPE);
+        generator.writeString("message");
+        generator.writeFieldName(ID);
+        generator.writeString(id);
+        writeString(generator, "conversationId", conversationId);
+        writeString(generator, "role", role);
+        writeString(generator, "content", content);
+        writeTime(generator, "timestamp", timestamp);
+        if (tokenCount != null) {
+            generator.writeNumberField("tokenCount", tokenCount);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, String field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    private static void writeTime(JsonGenerator generator, String field, LocalDateTime value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value.toString());
+        }
+    }
+
+    private static LocalDateTime time(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private void readLine(JsonParser parser, Batches batches) throws IOException {
+        int line = parser.currentLocation().getLineNr();
+        String type = null;
+        String id = null;
+        String title = null;
+        String conversationId = null;
+        String role = null;
+        String content = null;
+        String summary = null;
+        LocalDateTime createdAt = null;
+        LocalDateTime updatedAt = null;
+        LocalDateTime summaryThrough = null;
+        LocalDateTime timestamp = null;
+        Integer summaryTokenCount = null;
+        Integer tokenCount = null;
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "type" -> type = parser.getText();
+                    case "id" -> id = parser.getText();
+                    case "title" -> title = parser.getText();
+                    case "conversationId" -> conversationId = parser.getText();
+                    case "role" -> role = parser.getText();
+                    case "content" -> content = parser.getText();
+                    case "summary" -> summary = parser.getText();
+                    case "createdAt" -> createdAt = LocalDateTime.parse(parser.getText());
+                    case "updatedAt" -> updatedAt = LocalDateTime.parse(parser.getText());
+                    case "summaryThrough" -> summaryThrough = LocalDateTime.parse(parser.getText());
+                    case "timestamp" -> timestamp = LocalDateTime.parse(parser.getText());
+                    case "summaryTokenCount" -> summaryTokenCount = parser.getIntValue();
+                    case "tokenCount" -> tokenCount = parser.getIntValue();
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date at line " + line + ": " + e.getParsedString());
+        }
+        if (id == null) {
+            throw new IllegalArgumentException("Missing id at line " + line);
+        }
+        if ("conversation".equals(type)) {
+            // Both are needed for list ordering and cursors
+            if (updatedAt == null) {
+                updatedAt = createdAt != null ? createdAt : LocalDateTime.now();
+            }
+            if (createdAt == null) {
+                createdAt = updatedAt;
+            }
+            batches.addConversation(new Object[] {id, title, timestamp(createdAt), timestamp(updatedAt),
+                    summary, timestamp(summaryThrough), summaryTokenCount});
+        } else if ("message".equals(type)) {
+            if (conversationId == null) {
+                throw new IllegalArgumentException("Missing conversationId at line " + line);
+            }
+            if (role == null) {
+                throw new IllegalArgumentException("Missing role at line " + line);
+            }
+            if (content == null) {
+                throw new IllegalArgumentException("Missing content at line " + line);
+            }
+            batches.addMessage(new Object[] {id, content, role,
+                    timestamp(timestamp != null ? timestamp : LocalDateTime.now()), tokenCount, conversationId});
+        } else {
+            throw new IllegalArgumentException("Unknown type '" + type + "' at line " + line);
+        }
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+
+    /**
+     * Rows waiting to be written. Conversations are always written before messages, since a
+     * message row needs its conversation.
+     */
+    private final class Batches {
+        final List<Object[]> conversations = new ArrayList<>();
+        final List<Object[]> messages = new ArrayList<>();
+        // Conversations the batch writes to, restored from the archive first if they are there
+        final Set<String> conversationIds = new HashSet<>();
+        long conversationCount;
+        long messageCount;
+        long batchCount;
+
+        void addConversation(Object[] row) {
+            conversations.add(row);
+            conversationIds.add((String) row[0]);
+            if (conversations.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void addMessage(Object[] row) {
+            messages.add(row);
+            conversationIds.add((String) row[5]);
+            if (messages.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (conversations.isEmpty() && messages.isEmpty()) {
+                return;
+            }
+            try {
+                // Under the conversations' locks, so none of them is archived while the batch commits
+                archiver.write(conversationIds, () -> transactionTemplate.executeWithoutResult(status -> {
+                    if (!conversations.isEmpty()) {
+                        jdbcTemplate.batchUpdate(MERGE_CONVERSATION_SQL, conversations);
+                    }
+                    if (!messages.isEmpty()) {
+                        jdbcTemplate.batchUpdate(MERGE_MESSAGE_SQL, messages);
+                    }
+                }));
+            } catch (RuntimeException e) {
+                // Typically a message whose conversation is neither in the database nor the stream
+                throw new IllegalArgumentException("Import batch failed: " + e.getMessage(), e);
+            }
+            conversationCount += conversations.size();
+            messageCount += messages.size();
+            batchCount++;
+            conversations.clear();
+            messages.clear();
+            conversationIds.clear();
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package com.phantomquery.service;
+
+import com.phantomquery.model.Message;
+import com.phantomquery.model.MessageView;
+import com.phantomquery.model.SearchHit;
+import com.phantomquery.model.SearchResults;
+import com.phantomquery.repository.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over message content, ranked with BM25.
+ *
+ * Messages are added as {@link ConversationService} saves them, so search sees a message as soon
+ * as it is sent, before the write-behind queue has stored it. At startup, and on demand, the
+ * index is rebuilt from the messages table in one streaming scan on a background thread;
+ * messages saved during the scan are skipped by it and added afterwards, and the new index then
+ * replaces the old one.
+ *
+ * A query only touches the postings of its own terms, never the table: each document keeps its
+ * conversation, length and timestamp in parallel arrays, and only the content of the returned
+ * page is loaded, to build snippets. Deleted conversations are tombstoned until the next rebuild.
+ */
+@Service
+public class MessageSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    // BM25 parameters
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int SNIPPET_CHARS = 160;
+    private static final int SCAN_FETCH_SIZE = 1000;
+
+    private static final String SCAN_SQL =
+            "SELECT id, conversation_id, content, timestamp FROM messages ORDER BY timestamp";
+
+    // Separate from the shared template so the fetch size only applies to rebuild scans
+    private final JdbcTemplate scanTemplate;
+    private final MessageRepository messageRepository;
+    private final MessageWriteBehind messageWriter;
+    private final boolean rebuildOnStartup;
+    private final ExecutorService rebuilder;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private Segment segment = new Segment();
+    // Messages added while a rebuild scans the table, replayed into the rebuilt segment
+    private List<Message> addedDuringRebuild;
+    // The same messages' ids, which the scan skips; read by the rebuild thread without the lock
+    private final Set<String> addedIdsDuringRebuild = ConcurrentHashMap.newKeySet();
+    private Set<String> conversationsDeletedDuringRebuild;
+    private volatile boolean rebuilding;
+
+    public MessageSearchIndex(JdbcTemplate jdbcTemplate, MessageRepository messageRepository,
+                              MessageWriteBehind messageWriter,
+                              @Value("${search.index.rebuild-on-startup:true}") boolean rebuildOnStartup) {
+        this.scanTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.scanTemplate.setFetchSize(SCAN_FETCH_SIZE);
+        this.messageRepository = messageRepository;
+        this.messageWriter = messageWriter;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-index-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        if (rebuildOnStartup) {
+            rebuildAsync();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    public void add(Message message) {
+        if (message.getContent() == null) {
+            return;
+        }
+        String conversationId = message.getConversation() != null ? message.getConversation().getId() : null;
+        lock.writeLock().lock();
+        try {
+            segment.add(message.getId(), conversationId, message.getContent(), message.getTimestamp());
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(message);
+                addedIdsDuringRebuild.add(message.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeConversation(String conversationId) {
+        lock.writeLock().lock();
+        try {
+            segment.deleteConversation(conversationId);
+            if (conversationsDeletedDuringRebuild != null) {
+                conversationsDeletedDuringRebuild.add(conversationId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a rebuild from the messages table unless one is already running.
+     *
+     * @return whether a rebuild was started
+     */
+    public boolean rebuildAsync() {
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                return false;
+            }
+            rebuilding = true;
+            addedDuringRebuild = new ArrayList<>();
+            addedIdsDuringRebuild.clear();
+            conversationsDeletedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        rebuilder.execute(this::rebuild);
+        return true;
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        Segment rebuilt = new Segment();
+        try {
+            // Everything saved before the rebuild started must be in the table the scan reads
+            messageWriter.flushAll();
+            scanTemplate.query(SCAN_SQL, rs -> {
+                if (addedIdsDuringRebuild.contains(rs.getString("id"))) {
+                    return;
+                }
+                String content = rs.getString("content");
+                Timestamp timestamp = rs.getTimestamp("timestamp");
+                if (content != null) {
+                    rebuilt.add(rs.getString("id"), rs.getString("conversation_id"), content,
+                            timestamp != null ? timestamp.toLocalDateTime() : null);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Search index rebuild failed, keeping the current index: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                addedDuringRebuild = null;
+                addedIdsDuringRebuild.clear();
+                conversationsDeletedDuringRebuild = null;
+                rebuilding = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Saved during the scan, which skipped them whether or not they had been stored yet
+            for (Message message : addedDuringRebuild) {
+                rebuilt.add(message.getId(),
+                        message.getConversation() != null ? message.getConversation().getId() : null,
+                        message.getContent(), message.getTimestamp());
+            }
+            for (String conversationId : conversationsDeletedDuringRebuild) {
+                rebuilt.deleteConversation(conversationId);
+            }
+            segment = rebuilt;
+            addedDuringRebuild = null;
+            addedIdsDuringRebuild.clear();
+            conversationsDeletedDuringRebuild = null;
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Search index rebuilt: {} messages, {} terms in {} ms",
+                rebuilt.liveCount, rebuilt.postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Messages matching any term of {@code query}, best first; {@code conversationId} restricts
+     * the search to one conversation when not null.
+     */
+    public SearchResults search(String query, String conversationId, int offset, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return new SearchResults(0, List.of());
+        }
+
+        List<ScoredDoc> page;
+        long totalHits;
+        Map<String, String> conversationsByMessage = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            Segment current = segment;
+            int conversationFilter = -1;
+            if (conversationId != null) {
+                Integer ordinal = current.conversationOrdinals.get(conversationId);
+                if (ordinal == null) {
+                    return new SearchResults(0, List.of());
+                }
+                conversationFilter = ordinal;
+            }
+
+            // Term-at-a-time accumulation over the query terms' postings only
+            float[] scores = new float[current.docCount];
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            float averageLength = current.liveCount > 0 ? (float) current.totalLength / current.liveCount : 1f;
+            for (String term : terms) {
+                Postings postings = current.postings.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                // Postings still count tombstoned documents until the next rebuild
+                int documentFrequency = Math.min(postings.size, current.liveCount);
+                float idf = (float) Math.log(1 + (current.liveCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < postings.size; i++) {
+                    int doc = postings.docs[i];
+                    if (current.deleted.get(doc)
+                            || (conversationFilter >= 0 && current.conversations[doc] != conversationFilter)) {
+                        continue;
+                    }
+                    float tf = postings.freqs[i];
+                    float norm = K1 * (1 - B + B * current.lengths[doc] / averageLength);
+                    if (scores[doc] == 0f) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = doc;
+                    }
+                    scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+
+            // Keep only the best offset + limit
+            int wanted = offset + limit;
+            PriorityQueue<ScoredDoc> best = new PriorityQueue<>(wanted + 1, ScoredDoc.WORST_FIRST);
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                best.add(new ScoredDoc(doc, scores[doc], current.timestamps[doc]));
+                if (best.size() > wanted) {
+                    best.poll();
+                }
+            }
+            totalHits = touchedCount;
+            List<ScoredDoc> ranked = new ArrayList<>(best);
+            ranked.sort(ScoredDoc.WORST_FIRST.reversed());
+            page = offset < ranked.size() ? ranked.subList(offset, ranked.size()) : List.of();
+            for (ScoredDoc hit : page) {
+                hit.messageId = current.messageIds.get(hit.doc);
+                int conversation = current.conversations[hit.doc];
+                conversationsByMessage.put(hit.messageId,
+                        conversation >= 0 ? current.conversationIds.get(conversation) : null);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new SearchResults(totalHits, toHits(page, conversationsByMessage, terms));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("messages", segment.liveCount);
+            stats.put("deleted", segment.deleted.cardinality());
+            stats.put("terms", segment.postings.size());
+            stats.put("conversations", segment.conversationIds.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("rebuilding", rebuilding);
+        return stats;
+    }
+
+    /**
+     * Loads content for the returned page only, to build snippets.
+     */
+    private List<SearchHit> toHits(List<ScoredDoc> page, Map<String, String> conversationsByMessage, List<String> terms) {
+        if (page.isEmpty()) {
+            return List.of();
+        }
+        Map<String, MessageView> views = new HashMap<>();
+        for (MessageView view : messageRepository.findViewsByIdIn(conversationsByMessage.keySet())) {
+            views.put(view.id(), view);
+        }
+        if (views.size() < page.size()) {
+            // Indexed on save but still waiting in the write-behind queue
+            for (String conversationId : new HashSet<>(conversationsByMessage.values())) {
+                for (Message message : messageWriter.pending(conversationId)) {
+                    views.putIfAbsent(message.getId(), MessageView.of(message));
+                }
+            }
+        }
+        List<SearchHit> hits = new ArrayList<>(page.size());
+        for (ScoredDoc doc : page) {
+            MessageView view = views.get(doc.messageId);
+            hits.add(new SearchHit(doc.messageId, conversationsByMessage.get(doc.messageId),
+                    view != null ? view.role() : null,
+                    view != null ? snippet(view.content(), terms) : null,
+                    view != null ? view.timestamp() : null,
+                    doc.score));
+        }
+        return hits;
+    }
+
+    static String snippet(String content, List<String> terms) {
+        if (content.length() <= SNIPPET_CHARS) {
+            return content;
+        }
+        String lower = content.toLowerCase();
+        int match = -1;
+        for (String term : terms) {
+            int at = lower.indexOf(term);
+            if (at >= 0 && (match < 0 || at < match)) {
+                match = at;
+            }
+        }
+        int start = Math.max(0, Math.min(match - SNIPPET_CHARS / 4, content.length() - SNIPPET_CHARS));
+        int end = Math.min(content.length(), start + SNIPPET_CHARS);
+        return (start > 0 ? "..." : "") + content.substring(start, end) + (end < content.length() ? "..." : "");
+    }
+
+    /**
+     * Lower-cased runs of letters and digits, the same for indexed text and queries.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (token.length() < MAX_TERM_LENGTH) {
+                    token.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else if (token.length() > 0) {
+                if (token.length() >= MIN_TERM_LENGTH) {
+                    tokens.add(token.toString());
+                }
+                token.setLength(0);
+            }
+        }
+        if (token.length() >= MIN_TERM_LENGTH) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static final class ScoredDoc {
+        static final Comparator<ScoredDoc> WORST_FIRST = (a, b) -> {
+            int byScore = Float.compare(a.score, b.score);
+            return byScore != 0 ? byScore : Long.compare(a.timestamp, b.timestamp);
+        };
+
+        final int doc;
+        final float score;
+        final long timestamp;
+        String messageId;
+
+        ScoredDoc(int doc, float score, long timestamp) {
+            this.doc = doc;
+            this.score = score;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Documents containing one term, in ascending document order, with the term's frequency.
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+    }
+
+    /**
+     * One complete index. Documents are numbered densely in insertion order; per-document data
+     * lives in parallel arrays indexed by that number.
+     */
+    private static final class Segment {
+        final Map<String, Postings> postings = new HashMap<>();
+        final List<String> messageIds = new ArrayList<>();
+        final Map<String, Integer> conversationOrdinals = new HashMap<>();
+        final List<String> conversationIds = new ArrayList<>();
+        final BitSet deleted = new BitSet();
+        int[] conversations = new int[1024];
+        int[] lengths = new int[1024];
+        long[] timestamps = new long[1024];
+        int docCount;
+        int liveCount;
+        long totalLength;
+
+        void add(String messageId, String conversationId, String content, LocalDateTime timestamp) {
+            List<String> tokens = tokenize(content);
+            int doc = docCount++;
+            if (doc == lengths.length) {
+                int capacity = doc * 2;
+                conversations = Arrays.copyOf(conversations, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            messageIds.add(messageId);
+            conversations[doc] = conversationId == null ? -1
+                    : conversationOrdinals.computeIfAbsent(conversationId, id -> {
+                        conversationIds.add(id);
+                        return conversationIds.size() - 1;
+                    });
+            lengths[doc] = tokens.size();
+            timestamps[doc] = timestamp != null ? timestamp.toEpochSecond(ZoneOffset.UTC) : 0;
+            totalLength += tokens.size();
+            liveCount++;
+
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            frequencies.forEach((term, freq) -> postings.computeIfAbsent(term, t -> new Postings()).add(doc, freq));
+        }
+
+        void deleteConversation(String conversationId) {
+            Integer ordinal = conversationOrdinals.get(conversationId);
+            if (ordinal == null) {
+                return;
+            }
+            for (int doc = 0; doc < docCount; doc++) {
+                if (conversations[doc] == ordinal && !deleted.get(doc)) {
+                    deleted.set(doc);
+                    liveCount--;
+                    totalLength -= lengths[doc];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.phantomquery.service;
+
+import com.phantomquery.model.Message;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind persistence for chat messages. Saving a message only queues it; a writer thread
+ * inserts queued messages in JDBC batches, one transaction per batch, as soon as
+ * {@code batchSize} messages are waiting or the oldest has waited {@code flushIntervalMs}. This
+ * keeps database writes off the request path and turns many small H2 commits into a few group
+ * commits.
+ *
+ * Queued messages stay visible until their batch has committed: {@link #pending(String)} returns
+ * them for readers to add to message lists read from the database, and {@link #flush} waits until
+ * a conversation's queued messages are stored, for reads that go through the entity graph. Everything queued is written
+ * before shutdown completes. A batch that fails is retried row by row, so one bad row cannot take
+ * the others with it.
+ */
+@Service
+public class MessageWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBehind.class);
+
+    static final String INSERT_SQL =
+            "INSERT INTO messages (id, content, role, timestamp, token_count, conversation_id) VALUES (?, ?, ?, ?, ?, ?)";
+    // Keeps conversations.updated_at, the conversation list's sort key, at the newest message
+    private static final String TOUCH_SQL =
+            "UPDATE conversations SET updated_at = ? WHERE id = ? AND (updated_at IS NULL OR updated_at < ?)";
+    private static final long FLUSH_TIMEOUT_MS = 10000;
+
+    private record Pending(long sequence, long enqueuedAt, Message message, String conversationId) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxPending;
+
+    private final Object lock = new Object();
+    // Guarded by lock; messages leave the queue only after they are committed
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private long lastSequence;
+    private long persistedSequence;
+    // Messages up to this sequence are written without waiting for the batch to fill
+    private long flushTarget;
+    private boolean stopping;
+
+    private final Thread writer;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public MessageWriteBehind(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                              @Value("${persistence.messages.batch-size:50}") int batchSize,
+                              @Value("${persistence.messages.flush-interval-ms:200}") long flushIntervalMs,
+                              @Value("${persistence.messages.max-pending:10000}") int maxPending) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxPending = maxPending;
+        Gauge.builder("phantomquery.queue.depth", this, MessageWriteBehind::getQueueDepth)
+                .description("Items waiting in a pipeline queue")
+                .tag("queue", "message.writes")
+                .register(meterRegistry);
+        this.writer = new Thread(this::runWriter, "message-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Writes everything still queued, then stops the writer.
+     */
+    @PreDestroy
+    public void shutdown() {
+        synchronized (lock) {
+            stopping = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join(FLUSH_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            if (!queue.isEmpty()) {
+                logger.error("{} messages were still queued at shutdown", queue.size());
+            }
+        }
+    }
+
+    /**
+     * Queues a message for insertion and returns it. Blocks only while {@code maxPending}
+     * messages are already waiting.
+     */
+    public Message save(Message message) {
+        String conversationId = message.getConversation() != null ? message.getConversation().getId() : null;
+        synchronized (lock) {
+            while (queue.size() >= maxPending && !stopping) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (!stopping) {
+                queue.add(new Pending(++lastSequence, System.currentTimeMillis(), message, conversationId));
+                // The first message starts the time trigger, a full batch ends it
+                if (queue.size() == 1 || queue.size() >= batchSize) {
+                    lock.notifyAll();
+                }
+                return message;
+            }
+        }
+        // The writer is gone; store it directly
+        insert(List.of(message));
+        return message;
+    }
+
+    /**
+     * Waits until every message queued for the conversation so far is stored.
+     */
+    public void flush(String conversationId) {
+        long target = 0;
+        synchronized (lock) {
+            for (Pending pending : queue) {
+                if (Objects.equals(pending.conversationId(), conversationId)) {
+                    target = pending.sequence();
+                }
+            }
+        }
+        awaitPersisted(target);
+    }
+
+    /**
+     * Waits until every message queued so far is stored.
+     */
+    public void flushAll() {
+        long target;
+        synchronized (lock) {
+            target = queue.isEmpty() ? 0 : lastSequence;
+        }
+        awaitPersisted(target);
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            stats.put("queued", queue.size());
+        }
+        stats.put("batches", batchCount.get());
+        stats.put("written", writtenCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("batchSize", batchSize);
+        stats.put("flushIntervalMs", flushIntervalMs);
+        return stats;
+    }
+
+    /**
+     * The conversation's messages that are queued but not yet committed, oldest first.
+     */
+    public List<Message> pending(String conversationId) {
+        List<Message> messages = new ArrayList<>();
+        synchronized (lock) {
+            for (Pending pending : queue) {
+                if (Objects.equals(pending.conversationId(), conversationId)) {
+                    messages.add(pending.message());
+                }
+            }
+        }
+        return messages;
+    }
+
+    private void awaitPersisted(long target) {
+        if (target == 0) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+        synchronized (lock) {
+            flushTarget = Math.max(flushTarget, target);
+            lock.notifyAll();
+            while (persistedSequence < target && writer.isAlive()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    logger.warn("Timed out waiting for queued messages to be written");
+                    return;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (lock) {
+                try {
+                    while (queue.isEmpty() && !stopping) {
+                        lock.wait();
+                    }
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    // Group commit: wait for a full batch, the time trigger, a flush or shutdown
+                    long deadline = queue.peekFirst().enqueuedAt() + flushIntervalMs;
+                    long remaining;
+                    while (queue.size() < batchSize && !stopping && flushTarget < queue.peekFirst().sequence()
+                            && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        lock.wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // Write what is queued and stop
+                    stopping = true;
+                }
+                batch = new ArrayList<>(Math.min(queue.size(), batchSize));
+                Iterator<Pending> it = queue.iterator();
+                while (it.hasNext() && batch.size() < batchSize) {
+                    batch.add(it.next());
+                }
+            }
+
+            List<Message> messages = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                messages.add(pending.message());
+            }
+            insert(messages);
+
+            synchronized (lock) {
+                for (int i = 0; i < batch.size(); i++) {
+                    queue.pollFirst();
+                }
+                persistedSequence = batch.get(batch.size() - 1).sequence();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void insert(List<Message> messages) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        bind(ps, messages.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return messages.size();
+                    }
+                });
+                touchConversations(messages);
+            });
+            batchCount.incrementAndGet();
+            writtenCount.addAndGet(messages.size());
+        } catch (RuntimeException e) {
+            logger.warn("Batch insert of {} messages failed, retrying one by one: {}", messages.size(), e.getMessage());
+            for (Message message : messages) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, message.getId(), message.getContent(), message.getRole(),
+                            Timestamp.valueOf(message.getTimestamp()), message.getTokenCount(), conversationId(message));
+                    touchConversations(List.of(message));
+                    writtenCount.incrementAndGet();
+                } catch (RuntimeException rowError) {
+                    failedCount.incrementAndGet();
+                    logger.error("Dropping message {} that could not be stored: {}", message.getId(), rowError.getMessage());
+                }
+            }
+        }
+    }
+
+    private void touchConversations(List<Message> messages) {
+        Map<String, Timestamp> newest = new LinkedHashMap<>();
+        for (Message message : messages) {
+            String conversationId = conversationId(message);
+            if (conversationId != null) {
+                newest.merge(conversationId, Timestamp.valueOf(message.getTimestamp()),
+                        (a, b) -> a.after(b) ? a : b);
+            }
+        }
+        if (newest.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(newest.size());
+        newest.forEach((conversationId, timestamp) -> args.add(new Object[] {timestamp, conversationId, timestamp}));
+        jdbcTemplate.batchUpdate(TOUCH_SQL, args);
+    }
+
+    static void bind(PreparedStatement ps, Message message) throws SQLException {
+        ps.setString(1, message.getId());
+        ps.setString(2, message.getContent());
+        ps.setString(3, message.getRole());
+        ps.setTimestamp(4, Timestamp.valueOf(message.getTimestamp()));
+        if (message.getTokenCount() != null) {
+            ps.setInt(5, message.getTokenCount());
+        } else {
+            ps.setNull(5, Types.INTEGER);
+        }
+        ps.setString(6, conversationId(message));
+    }
+
+    private static String conversationId(Message message) {
+        return message.getConversation() != null ? message.getConversation().getId() : null;
+    }
+}
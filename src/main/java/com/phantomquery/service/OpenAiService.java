@@ -1,52 +1,187 @@
 package com.phantomquery.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 public class OpenAiService {
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiService.class);
+    private static final String MODEL = "gpt-3.5-turbo";
+    private static final double TEMPERATURE = 0.7;
+
     private final String apiKey;
     private final String apiUrl = "https://api.openai.com/v1/chat/completions";
     private final RestTemplate restTemplate;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CompletionCache completionCache;
+    // Upstream calls currently running, by cache key; identical requests wait on these instead
+    private final Map<String, InFlightCompletion> inFlight = new ConcurrentHashMap<>();
+    // Upper bound on one upstream request, streamed ones included, and on waiting for a shared one
+    private final long requestTimeoutMs;
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final MeterRegistry meterRegistry;
+    // Request timers by operation and exception ("none" for success), registered on first use
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+    // Streaming requests until the first content delta
+    private final Timer firstTokenTimer;
     private final String systemPrompt = "You are PhantomQuery, an advanced AI system. Provide detailed, professional responses to queries. Focus on clarity and completeness in your answers.";
 
-    public OpenAiService() {
+    public OpenAiService(CompletionCache completionCache, MeterRegistry meterRegistry,
+                         @Value("${openai.connect-timeout-ms:10000}") int connectTimeoutMs,
+                         @Value("${openai.request-timeout-ms:60000}") long requestTimeoutMs) {
         String apiKey = System.getenv("OPENAI_API_KEY");
         if (apiKey == null || apiKey.trim().isEmpty()) {
             throw new IllegalStateException("OPENAI_API_KEY environment variable is not set");
         }
         this.apiKey = apiKey;
-        this.restTemplate = new RestTemplate();
+        this.completionCache = completionCache;
+        this.meterRegistry = meterRegistry;
+        this.firstTokenTimer = Timer.builder("phantomquery.llm.first.token")
+                .description("Time from sending a streaming completion request to its first token")
+                .tag("model", MODEL)
+                .register(meterRegistry);
+        this.requestTimeoutMs = requestTimeoutMs;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout((int) Math.min(Integer.MAX_VALUE, requestTimeoutMs));
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
     }
 
-    @SuppressWarnings("unchecked")
     public String getCompletion(String prompt) {
+        return getCompletion(List.of(), prompt);
+    }
+
+    /**
+     * Answers {@code prompt} with the given earlier turns (role/content maps, oldest first)
+     * placed between the system prompt and the question.
+     */
+    public String getCompletion(List<Map<String, String>> context, String prompt) {
+        String cacheKey = cacheKey(context, prompt);
+        String cached = completionCache.get(cacheKey);
+        if (cached != null) {
+            logger.debug("Completion cache hit");
+            return cached;
+        }
+
+        InFlightCompletion call = new InFlightCompletion();
+        InFlightCompletion running = inFlight.putIfAbsent(cacheKey, call);
+        if (running != null) {
+            coalescedRequests.incrementAndGet();
+            logger.debug("Coalesced completion request with one already in flight");
+            return awaitShared(running);
+        }
+
+        try {
+            // A call that finished between the cache check and registering ours may have filled it
+            String completion = completionCache.get(cacheKey);
+            if (completion == null) {
+                completion = requestCompletion("completion", buildMessages(context, prompt), TEMPERATURE, null);
+                completionCache.put(cacheKey, completion);
+            }
+            call.result.complete(completion);
+            return completion;
+        } catch (RuntimeException e) {
+            call.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, call);
+        }
+    }
+
+    private String awaitShared(InFlightCompletion running) {
+        try {
+            return running.result.get(requestTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out after " + requestTimeoutMs + " ms waiting for an identical completion request");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a completion", e);
+        }
+    }
+
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(completionCache.getStats());
+        stats.put("inFlight", inFlight.size());
+        stats.put("coalescedRequests", coalescedRequests.get());
+        return stats;
+    }
+
+    /**
+     * Condenses earlier turns into a running summary: folds {@code transcript} into
+     * {@code previousSummary} (which may be empty). Not cached, since summaries are only
+     * computed once per batch of turns.
+     */
+    public String summarize(String previousSummary, String transcript, int maxTokens) {
         List<Map<String, String>> messages = new ArrayList<>();
-        
-        // Add system message
-        Map<String, String> systemMessage = new HashMap<>();
-        systemMessage.put("role", "system");
-        systemMessage.put("content", systemPrompt);
-        messages.add(systemMessage);
+        messages.add(Map.of("role", "system", "content",
+                "You maintain a running summary of a conversation between a user and an assistant. " +
+                "Merge the new turns into the existing summary. Keep names, facts, decisions and open questions; " +
+                "drop pleasantries. Answer with the updated summary only, in under " + (maxTokens * 3 / 4) + " words."));
+        messages.add(Map.of("role", "user", "content",
+                "Existing summary:\n" + (previousSummary == null || previousSummary.isBlank() ? "(none)" : previousSummary) +
+                "\n\nNew turns:\n" + transcript));
+        return requestCompletion("summary", messages, 0.2, maxTokens);
+    }
 
-        // Add user message
-        Map<String, String> userMessage = new HashMap<>();
-        userMessage.put("role", "user");
-        userMessage.put("content", prompt);
-        messages.add(userMessage);
+    private String requestCompletion(String operation, List<Map<String, String>> messages, double temperature, Integer maxTokens) {
+        long startedAt = System.nanoTime();
+        try {
+            String completion = requestCompletion(messages, temperature, maxTokens);
+            recordRequest(operation, startedAt, null);
+            return completion;
+        } catch (RuntimeException e) {
+            recordRequest(operation, startedAt, e);
+            throw e;
+        }
+    }
 
+    @SuppressWarnings("unchecked")
+    private String requestCompletion(List<Map<String, String>> messages, double temperature, Integer maxTokens) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.setBearerAuth(apiKey);
 
         Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", "gpt-3.5-turbo");
+        requestBody.put("model", MODEL);
         requestBody.put("messages", messages);
-        requestBody.put("temperature", 0.7);
+        requestBody.put("temperature", temperature);
+        if (maxTokens != null) {
+            requestBody.put("max_tokens", maxTokens);
+        }
 
         HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
         Map<String, Object> response = restTemplate.postForObject(apiUrl, request, Map.class);
@@ -56,4 +191,251 @@ public class OpenAiService {
         Map<String, Object> message = (Map<String, Object>) choice.get("message");
         return (String) message.get("content");
     }
-} 
\ No newline at end of file
+
+    /**
+     * Streams a completion over server-sent events without blocking a thread on the response.
+     * Each content chunk is passed to {@code onDelta} as it arrives, on the HTTP client's threads;
+     * the returned future completes with the assembled answer. A cached answer is delivered as a
+     * single delta. A request identical to a streaming one already in flight gets that one's
+     * deltas, what was streamed before it joined first; one identical to a blocking request gets
+     * the answer as a single delta when it is ready.
+     */
+    public CompletableFuture<String> streamCompletion(String prompt, Consumer<String> onDelta) {
+        return streamCompletion(List.of(), prompt, onDelta);
+    }
+
+    public CompletableFuture<String> streamCompletion(List<Map<String, String>> context, String prompt, Consumer<String> onDelta) {
+        String cacheKey = cacheKey(context, prompt);
+        String cached = completionCache.get(cacheKey);
+        if (cached != null) {
+            logger.debug("Completion cache hit");
+            onDelta.accept(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        InFlightCompletion call = new InFlightCompletion();
+        InFlightCompletion running = inFlight.putIfAbsent(cacheKey, call);
+        if (running != null) {
+            coalescedRequests.incrementAndGet();
+            logger.debug("Coalesced streaming completion request with one already in flight");
+            return followStream(running, onDelta);
+        }
+
+        Consumer<String> publishing = delta -> {
+            onDelta.accept(delta);
+            call.publish(delta);
+        };
+        requestStreamingCompletion(buildMessages(context, prompt), cacheKey, publishing).whenComplete((completion, error) -> {
+            inFlight.remove(cacheKey, call);
+            if (error != null) {
+                call.result.completeExceptionally(error);
+            } else {
+                call.result.complete(completion);
+            }
+        });
+        return call.result.copy();
+    }
+
+    private CompletableFuture<String> followStream(InFlightCompletion running, Consumer<String> onDelta) {
+        AtomicInteger delivered = new AtomicInteger();
+        Consumer<String> forward = delta -> {
+            delivered.addAndGet(delta.length());
+            onDelta.accept(delta);
+        };
+        running.follow(forward);
+        return running.result
+                .thenApply(completion -> {
+                    running.unfollow(forward);
+                    // A blocking call streams nothing; deliver whatever the deltas did not cover
+                    if (delivered.get() < completion.length()) {
+                        onDelta.accept(completion.substring(delivered.get()));
+                    }
+                    return completion;
+                })
+                .orTimeout(requestTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((completion, error) -> running.unfollow(forward));
+    }
+
+    private CompletableFuture<String> requestStreamingCompletion(List<Map<String, String>> messages, String cacheKey, Consumer<String> onDelta) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", MODEL);
+        requestBody.put("messages", messages);
+        requestBody.put("temperature", TEMPERATURE);
+        requestBody.put("stream", true);
+
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(apiUrl))
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "text/event-stream")
+                    .header("Authorization", "Bearer " + apiKey)
+                    .timeout(Duration.ofMillis(requestTimeoutMs))
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long startedAt = System.nanoTime();
+        CompletionEventSubscriber subscriber = new CompletionEventSubscriber(onDelta, startedAt);
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(subscriber))
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("OpenAI returned HTTP " + response.statusCode() + ": " + subscriber.otherLines);
+                    }
+                    String completion = subscriber.content.toString();
+                    completionCache.put(cacheKey, completion);
+                    return completion;
+                })
+                // The request timeout only covers the response headers; this bounds the whole stream
+                .orTimeout(requestTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((completion, error) -> {
+                    if (error instanceof TimeoutException) {
+                        subscriber.cancel();
+                    }
+                    recordRequest("stream", startedAt, error);
+                });
+    }
+
+    /**
+     * Upstream request latency, by operation and outcome; the exception tag counts errors by kind.
+     */
+    private void recordRequest(String operation, long startedAt, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String exception = cause == null ? "none" : cause.getClass().getSimpleName();
+        requestTimers.computeIfAbsent(operation + ':' + exception, key -> Timer.builder("phantomquery.llm.request")
+                        .description("Completion requests to OpenAI")
+                        .tag("model", MODEL)
+                        .tag("operation", operation)
+                        .tag("outcome", cause == null ? "success" : "error")
+                        .tag("exception", exception)
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    private String cacheKey(List<Map<String, String>> context, String prompt) {
+        return CompletionCache.key(MODEL, TEMPERATURE, systemPrompt + CompletionCache.fingerprint(context), prompt);
+    }
+
+    private List<Map<String, String>> buildMessages(List<Map<String, String>> context, String prompt) {
+        List<Map<String, String>> messages = new ArrayList<>();
+        
+        // Add system message
+        Map<String, String> systemMessage = new HashMap<>();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", systemPrompt);
+        messages.add(systemMessage);
+
+        // Earlier turns and any summary of them
+        messages.addAll(context);
+
+        // Add user message
+        Map<String, String> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", prompt);
+        messages.add(userMessage);
+        return messages;
+    }
+
+    /**
+     * An upstream call in progress that identical requests share. Content deltas of a streaming
+     * call are passed on to every follower; one that joins late first gets everything so far.
+     */
+    private static final class InFlightCompletion {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        // Guarded by this
+        private final StringBuilder content = new StringBuilder();
+        private final List<Consumer<String>> followers = new ArrayList<>();
+
+        synchronized void publish(String delta) {
+            content.append(delta);
+            for (Consumer<String> follower : followers) {
+                try {
+                    follower.accept(delta);
+                } catch (RuntimeException e) {
+                    logger.warn("Error forwarding completion delta: {}", e.getMessage());
+                }
+            }
+        }
+
+        synchronized void follow(Consumer<String> onDelta) {
+            if (content.length() > 0) {
+                onDelta.accept(content.toString());
+            }
+            followers.add(onDelta);
+        }
+
+        synchronized void unfollow(Consumer<String> onDelta) {
+            followers.remove(onDelta);
+        }
+    }
+
+    /**
+     * Parses "data: {...}" lines of the chat completion event stream and forwards content deltas.
+     * Lines that are not events (e.g. an error body) are kept for the error message.
+     */
+    private final class CompletionEventSubscriber implements Flow.Subscriber<String> {
+        private final Consumer<String> onDelta;
+        private final StringBuilder content = new StringBuilder();
+        private final StringBuilder otherLines = new StringBuilder();
+        private final long startedAt;
+        private volatile Flow.Subscription subscription;
+
+        CompletionEventSubscriber(Consumer<String> onDelta, long startedAt) {
+            this.onDelta = onDelta;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        /**
+         * Stops reading a response that is no longer wanted, which releases the connection.
+         */
+        void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.isEmpty()) {
+                return;
+            }
+            if (!line.startsWith("data:")) {
+                otherLines.append(line);
+                return;
+            }
+            String data = line.substring("data:".length()).trim();
+            if ("[DONE]".equals(data)) {
+                return;
+            }
+            try {
+                JsonNode delta = objectMapper.readTree(data).path("choices").path(0).path("delta").path("content");
+                if (delta.isTextual() && !delta.asText().isEmpty()) {
+                    if (content.length() == 0) {
+                        firstTokenTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    }
+                    content.append(delta.asText());
+                    onDelta.accept(delta.asText());
+                }
+            } catch (JsonProcessingException e) {
+                logger.warn("Skipping malformed completion event: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            logger.error("Completion stream failed: {}", throwable.getMessage());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.phantomquery.service;
+
+import com.google.protobuf.ByteString;
+import com.phantomquery.audio.AudioConverter;
+import com.phantomquery.audio.PcmAccumulator;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Live text for utterances that arrive as a series of speech_data chunks. Chunks are not
+ * recognized one by one: the first chunk after a partial result opens a debounce window, every
+ * chunk received within it is batched, and when it closes only the audio not yet recognized is
+ * sent to the recognizer. The window texts are joined into the partial transcript, which the
+ * final recognition of the whole utterance replaces on speech_end.
+ *
+ * At most one partial recognition per utterance is in flight; audio arriving meanwhile is picked
+ * up by the next window, so a slow recognizer means fewer, larger windows rather than a backlog.
+ */
+@Service
+public class PartialTranscriptionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartialTranscriptionService.class);
+
+    // 16kHz mono 16-bit
+    private static final int BYTES_PER_MILLI = 32;
+
+    private final SpeechToTextService speechToTextService;
+    private final boolean enabled;
+    private final long debounceMs;
+    private final int minWindowBytes;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Utterance> utterances = new ConcurrentHashMap<>();
+
+    private final AtomicLong chunkCount = new AtomicLong();
+    private final AtomicLong recognitionCount = new AtomicLong();
+
+    public PartialTranscriptionService(SpeechToTextService speechToTextService,
+                                       @Value("${speech.partials.enabled:true}") boolean enabled,
+                                       @Value("${speech.partials.debounce-ms:1000}") long debounceMs,
+                                       @Value("${speech.partials.min-window-ms:300}") int minWindowMs) {
+        this.speechToTextService = speechToTextService;
+        this.enabled = enabled;
+        this.debounceMs = debounceMs;
+        this.minWindowBytes = minWindowMs * BYTES_PER_MILLI;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "partial-transcription");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Notes that audio was appended to a session's utterance, whose 16kHz mono PCM is
+     * {@code audio}. Callers append to it while holding its monitor. Partial transcripts for the
+     * utterance so far are passed to {@code listener} from a recognizer thread.
+     */
+    public void audioAdded(String sessionId, PcmAccumulator audio, Consumer<String> listener) {
+        if (!enabled) {
+            return;
+        }
+        chunkCount.incrementAndGet();
+        Utterance utterance = utterances.computeIfAbsent(sessionId, id -> new Utterance(id, audio, listener));
+        utterance.schedule();
+    }
+
+    /**
+     * Ends the current utterance of a session (speech_end, a new speech_start or disconnect);
+     * partial results still in flight for it are discarded.
+     */
+    public void finish(String sessionId) {
+        Utterance utterance = utterances.remove(sessionId);
+        if (utterance != null) {
+            utterance.finish();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("debounceMs", debounceMs);
+        stats.put("activeUtterances", utterances.size());
+        stats.put("chunks", chunkCount.get());
+        stats.put("recognitions", recognitionCount.get());
+        return stats;
+    }
+
+    private final class Utterance {
+        private final String sessionId;
+        private final PcmAccumulator audio;
+        private final Consumer<String> listener;
+        private final StringBuilder text = new StringBuilder();
+
+        // Guarded by this
+        private int recognizedBytes;
+        private ScheduledFuture<?> window;
+        private boolean inFlight;
+        private boolean finished;
+
+        Utterance(String sessionId, PcmAccumulator audio, Consumer<String> listener) {
+            this.sessionId = sessionId;
+            this.audio = audio;
+            this.listener = listener;
+        }
+
+        synchronized void schedule() {
+            if (window == null && !inFlight && !finished) {
+                window = scheduler.schedule(this::recognizeWindow, debounceMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void finish() {
+            finished = true;
+            if (window != null) {
+                window.cancel(false);
+                window = null;
+            }
+        }
+
+        private void recognizeWindow() {
+            ByteString newAudio;
+            synchronized (this) {
+                window = null;
+                if (finished) {
+                    return;
+                }
+                synchronized (audio) {
+                    int end = audio.size();
+                    if (end - recognizedBytes < minWindowBytes) {
+                        // Too little to recognize on its own; the next chunk opens another window
+                        return;
+                    }
+                    newAudio = audio.copy(recognizedBytes, end);
+                    recognizedBytes = end;
+                }
+                inFlight = true;
+            }
+
+            recognitionCount.incrementAndGet();
+            speechToTextService.transcribeAsync(newAudio, AudioConverter.TARGET_FORMAT).whenComplete((result, error) -> {
+                String partial = null;
+                synchronized (this) {
+                    inFlight = false;
+                    if (finished) {
+                        return;
+                    }
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        logger.warn("Partial transcription failed for session {}: {}", sessionId, cause.getMessage());
+                    } else if (!result.isEmpty()) {
+                        if (text.length() > 0) {
+                            text.append(' ');
+                        }
+                        text.append(result.text().trim());
+                        partial = text.toString();
+                    }
+                    // Audio that arrived while this window was being recognized
+                    boolean pending;
+                    synchronized (audio) {
+                        pending = audio.size() > recognizedBytes;
+                    }
+                    if (pending) {
+                        schedule();
+                    }
+                }
+                if (partial != null) {
+                    listener.accept(partial);
+                }
+            });
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package com.phantomquery.service;
 
+import com.phantomquery.model.Transcription;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -7,101 +13,220 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.CountDownLatch;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
-// Google Cloud Speech-to-Text imports
-import com.google.cloud.speech.v1.*;
 import com.google.protobuf.ByteString;
-import java.util.List;
+import com.google.protobuf.UnsafeByteOperations;
+import com.phantomquery.audio.AudioConverter;
+import com.phantomquery.speech.SpeechRecognizer;
 
 @Service
 public class SpeechToTextService {
     
     private static final Logger LOGGER = Logger.getLogger(SpeechToTextService.class.getName());
     
-    private final AtomicReference<String> recognizedText = new AtomicReference<>("");
-    private CountDownLatch recognitionLatch = new CountDownLatch(1);
     private final AtomicBoolean sendToOpenAI = new AtomicBoolean(true);
-    private SpeechClient speechClient;
-    private boolean googleCloudAvailable = false;
+    private final SpeechRecognizer recognizer;
     
-    public SpeechToTextService() {
-        LOGGER.info("Initializing SpeechToTextService...");
-        try {
-            // Check for Google Cloud credentials
-            String credentialsPath = System.getenv("GOOGLE_APPLICATION_CREDENTIALS");
-            
-            // Initialize the Google Cloud Speech client
-            speechClient = SpeechClient.create();
-            googleCloudAvailable = true;
-            LOGGER.info("Google Cloud Speech client initialized");
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Failed to initialize Google Cloud Speech client", e);
-            googleCloudAvailable = false;
-            LOGGER.warning("Falling back to simulated speech recognition");
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Unexpected error initializing SpeechToTextService", e);
-            googleCloudAvailable = false;
+    // Bounded pool for recognition requests; each request carries its own result
+    private final ThreadPoolExecutor recognitionExecutor;
+    private final int queueCapacity;
+    private final long timeoutMs;
+    
+    // Submission to result, queue wait included, by outcome; and the recognizer call alone
+    private final Map<String, Timer> recognitionTimers = new HashMap<>();
+    private final Timer recognizerTimer;
+    
+    public SpeechToTextService(SpeechRecognizer recognizer, MeterRegistry meterRegistry,
+                               @Value("${speech.recognition.pool-size:4}") int poolSize,
+                               @Value("${speech.recognition.queue-capacity:64}") int queueCapacity,
+                               @Value("${speech.recognition.timeout-ms:10000}") long timeoutMs) {
+        LOGGER.info("Initializing SpeechToTextService with engine: " + recognizer.getName());
+        this.recognizer = recognizer;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMs = timeoutMs;
+        for (String outcome : List.of("success", "timeout", "rejected", "error")) {
+            recognitionTimers.put(outcome, Timer.builder("phantomquery.speech.recognition")
+                    .description("Speech recognition requests from submission to result")
+                    .tag("engine", recognizer.getName())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
         }
+        this.recognizerTimer = Timer.builder("phantomquery.speech.recognizer")
+                .description("Time spent in the speech recognizer per request")
+                .tag("engine", recognizer.getName())
+                .register(meterRegistry);
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        this.recognitionExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "speech-recognition-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.recognitionExecutor.allowCoreThreadTimeOut(true);
+        Gauge.builder("phantomquery.queue.depth", recognitionExecutor, executor -> executor.getQueue().size())
+                .description("Items waiting in a pipeline queue")
+                .tag("queue", "speech.recognition")
+                .register(meterRegistry);
+        Gauge.builder("phantomquery.speech.recognitions.active", recognitionExecutor, ThreadPoolExecutor::getActiveCount)
+                .description("Recognition requests being processed")
+                .register(meterRegistry);
+        LOGGER.info("Recognition executor: " + poolSize + " threads, queue capacity " + queueCapacity +
+                   ", timeout " + timeoutMs + " ms");
+        
+        if (!recognizer.isAvailable()) {
+            LOGGER.warning("Speech recognition engine '" + recognizer.getName() + "' is not available");
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        LOGGER.info("Shutting down SpeechToTextService...");
+        recognitionExecutor.shutdownNow();
     }
     
     public String convertSpeechToText(byte[] audioData) {
         LOGGER.info("Converting speech to text, audio data size: " + audioData.length + " bytes");
         
-        // Reset the recognition latch and text
-        recognitionLatch = new CountDownLatch(1);
-        recognizedText.set("");
-        
+        // The array is owned by the caller and not modified afterwards, so wrap it instead of copying
+        return convertSpeechToText(UnsafeByteOperations.unsafeWrap(audioData), detectAudioFormat(audioData));
+    }
+    
+    /**
+     * Reads the format from audio file headers, falling back to 16kHz 16-bit mono for raw PCM.
+     */
+    public AudioFormat detectAudioFormat(byte[] audioData) {
         // Default audio format (16kHz, 16-bit, mono)
         AudioFormat defaultFormat = new AudioFormat(16000, 16, 1, true, false);
         
+        // Try to get the audio format from the data
+        LOGGER.info("Attempting to get audio format from data...");
         try {
-            // Try to get the audio format from the data
-            LOGGER.info("Attempting to get audio format from data...");
-            AudioFormat format = defaultFormat;
-            
-            try {
-                ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
-                AudioInputStream ais = AudioSystem.getAudioInputStream(bais);
-                format = ais.getFormat();
-                LOGGER.info("Audio format: " + format);
-            } catch (UnsupportedAudioFileException e) {
-                LOGGER.warning("Audio data doesn't have proper headers, using raw format: " + defaultFormat);
-                format = defaultFormat;
-            }
-            
-            // Check if the format is suitable for speech recognition
-            boolean formatSuitable = isFormatSuitable(format);
-            LOGGER.info("Audio format suitable for speech recognition: " + formatSuitable);
-            
-            if (!formatSuitable) {
-                LOGGER.warning("Audio format may not be optimal for recognition: " + format);
-            }
-            
-            // Process the audio for recognition
-            LOGGER.info("Processing audio for recognition, format: " + format);
-            processAudioForRecognition(audioData, format);
-            
-            // Wait for recognition to complete
-            LOGGER.info("Waiting for recognition to complete (timeout: 10 seconds)...");
-            boolean completed = recognitionLatch.await(10, TimeUnit.SECONDS);
-            
-            if (completed) {
-                LOGGER.info("Recognition completed successfully");
-                return "Recognized text: " + recognizedText.get();
-            } else {
+            ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
+            AudioInputStream ais = AudioSystem.getAudioInputStream(bais);
+            AudioFormat format = ais.getFormat();
+            LOGGER.info("Audio format: " + format);
+            return format;
+        } catch (UnsupportedAudioFileException e) {
+            LOGGER.warning("Audio data doesn't have proper headers, using raw format: " + defaultFormat);
+        } catch (IOException e) {
+            LOGGER.warning("Could not read audio headers, using raw format: " + defaultFormat);
+        }
+        return defaultFormat;
+    }
+    
+    /**
+     * Blocking form of {@link #transcribeAsync}, kept for callers that expect the old string results.
+     */
+    public String convertSpeechToText(ByteString audioData, AudioFormat format) {
+        try {
+            return "Recognized text: " + transcribeAsync(audioData, format).get().text();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
                 LOGGER.warning("Recognition timed out");
                 return "Recognition timed out";
             }
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error converting speech to text", e);
-            return "Error: " + e.getMessage();
+            LOGGER.log(Level.SEVERE, "Error converting speech to text", e.getCause());
+            return "Error: " + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: interrupted";
+        }
+    }
+    
+    /**
+     * Queues raw audio whose format is already known (e.g. from a binary frame header) for
+     * recognition and returns immediately. The future fails with a {@link RejectedExecutionException}
+     * when the recognition queue is full and with a {@link TimeoutException} after the configured timeout.
+     * A request that times out is cancelled as well: it gives up its queue slot, or its thread if
+     * the recognizer can be interrupted.
+     */
+    public CompletableFuture<Transcription> transcribeAsync(ByteString audioData, AudioFormat format) {
+        LOGGER.info("Queueing speech recognition, audio data size: " + audioData.size() + " bytes");
+        
+        // Check if the format is suitable for speech recognition
+        if (!isFormatSuitable(format)) {
+            LOGGER.warning("Audio format may not be optimal for recognition: " + format);
+        }
+        
+        long submittedAt = System.nanoTime();
+        CompletableFuture<Transcription> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = recognitionExecutor.submit(() -> {
+                try {
+                    result.complete(recognize(audioData, format, submittedAt));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warning("Recognition queue full (" + queueCapacity + " pending), rejecting request");
+            recordRecognition(submittedAt, e);
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException("Speech recognition is busy, try again shortly"));
         }
+        return result
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((transcription, error) -> {
+                    if (error instanceof TimeoutException) {
+                        cancel(task);
+                    }
+                    recordRecognition(submittedAt, error);
+                });
+    }
+    
+    /**
+     * Failing the future alone would leave a queued request waiting for a thread; it is taken off
+     * the queue. A running one is interrupted, which stops recognizers that wait interruptibly;
+     * the Google engine does not, and bounds its calls with a deadline of the same length instead.
+     */
+    private void cancel(Future<?> task) {
+        if (task.cancel(true)) {
+            recognitionExecutor.remove((Runnable) task);
+            LOGGER.warning("Recognition timed out after " + timeoutMs + " ms, cancelled");
+        }
+    }
+    
+    public CompletableFuture<Transcription> transcribeAsync(byte[] audioData) {
+        // The array is owned by the caller and not modified afterwards, so wrap it instead of copying
+        return transcribeAsync(UnsafeByteOperations.unsafeWrap(audioData), detectAudioFormat(audioData));
+    }
+    
+    private void recordRecognition(long submittedAt, Throwable error) {
+        Throwable cause = error instanceof CompletionException
+                ? error.getCause() : error;
+        String outcome = cause == null ? "success"
+                : cause instanceof TimeoutException ? "timeout"
+                : cause instanceof RejectedExecutionException ? "rejected"
+                : "error";
+        recognitionTimers.get(outcome).record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+    }
+    
+    public int getQueueDepth() {
+        return recognitionExecutor.getQueue().size();
+    }
+    
+    public int getActiveRecognitions() {
+        return recognitionExecutor.getActiveCount();
     }
     
     private boolean isFormatSuitable(AudioFormat format) {
@@ -115,76 +240,25 @@ public class SpeechToTextService {
                format.getSampleSizeInBits() >= 8;
     }
     
-    private void processAudioForRecognition(byte[] audioData, AudioFormat format) {
-        // Start a thread for recognition to avoid blocking
-        Thread recognitionThread = new Thread(() -> {
-            try {
-                if (googleCloudAvailable) {
-                    LOGGER.info("Using Google Cloud Speech-to-Text for recognition");
-                    recognizeSpeechWithGoogleCloud(audioData, format);
-                } else {
-                    LOGGER.info("Using simulated speech recognition");
-                    simulateSpeechRecognition();
-                }
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Error in recognition thread", e);
-                recognizedText.set("Error during recognition: " + e.getMessage());
-            } finally {
-                recognitionLatch.countDown();
-            }
-        });
-        
-        recognitionThread.start();
-    }
-    
-    private void recognizeSpeechWithGoogleCloud(byte[] audioData, AudioFormat format) throws IOException {
-        LOGGER.info("Recognizing speech with Google Cloud, audio size: " + audioData.length + " bytes");
-        
-        // Configure the recognition
-        LOGGER.info("Configuring recognition with sample rate: " + format.getSampleRate() + 
-                   ", channels: " + format.getChannels());
-        
-        RecognitionConfig config = RecognitionConfig.newBuilder()
-                .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                .setLanguageCode("en-US")
-                .setSampleRateHertz((int) format.getSampleRate())
-                .setAudioChannelCount(format.getChannels())
-                .setEnableAutomaticPunctuation(true)
-                .setModel("video")
-                .build();
-        
-        // Create the audio content
-        ByteString audioBytes = ByteString.copyFrom(audioData);
-        RecognitionAudio audio = RecognitionAudio.newBuilder()
-                .setContent(audioBytes)
-                .build();
-        
-        // Perform the transcription
-        LOGGER.info("Sending request to Google Cloud Speech-to-Text API...");
-        RecognizeResponse response = speechClient.recognize(config, audio);
-        List<SpeechRecognitionResult> results = response.getResultsList();
-        
-        LOGGER.info("Received response from Google Cloud Speech-to-Text API with " + 
-                   results.size() + " results");
-        
-        // Process the results
-        StringBuilder transcription = new StringBuilder();
-        for (SpeechRecognitionResult result : results) {
-            List<SpeechRecognitionAlternative> alternatives = result.getAlternativesList();
-            for (SpeechRecognitionAlternative alternative : alternatives) {
-                String text = alternative.getTranscript();
-                LOGGER.info("Google Cloud Speech recognition result: " + text);
-                transcription.append(text).append(" ");
+    private Transcription recognize(ByteString audioData, AudioFormat format, long submittedAt) {
+        try {
+            // Recognizers only need 16kHz mono; downmix and resample anything richer first
+            if (!AudioConverter.isTargetFormat(format) && AudioConverter.canConvert(format)) {
+                int originalSize = audioData.size();
+                audioData = AudioConverter.toTargetFormat(audioData, format);
+                format = AudioConverter.TARGET_FORMAT;
+                LOGGER.fine("Converted " + originalSize + " bytes to " + audioData.size() + " bytes of 16kHz mono");
             }
+            long recognizeStartedAt = System.nanoTime();
+            String text = recognizer.recognize(audioData, format);
+            recognizerTimer.record(System.nanoTime() - recognizeStartedAt, TimeUnit.NANOSECONDS);
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedAt);
+            LOGGER.info("Recognition completed in " + latencyMillis + " ms");
+            return new Transcription(text, audioData.size(), latencyMillis);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Error during recognition", e);
+            throw new IllegalStateException("Error during recognition: " + e.getMessage(), e);
         }
-        
-        recognizedText.set(transcription.toString().trim());
-    }
-    
-    private void simulateSpeechRecognition() throws InterruptedException {
-        // Simulate a delay for testing purposes
-        Thread.sleep(1000);
-        recognizedText.set("This is a simulated speech recognition result for testing purposes.");
     }
     
     public boolean isSendToOpenAI() {
@@ -195,7 +269,15 @@ public class SpeechToTextService {
         sendToOpenAI.set(send);
     }
     
+    public String getEngineName() {
+        return recognizer.getName();
+    }
+    
+    public boolean isRecognizerAvailable() {
+        return recognizer.isAvailable();
+    }
+    
     public boolean isGoogleCloudAvailable() {
-        return googleCloudAvailable;
+        return "google".equals(recognizer.getName()) && recognizer.isAvailable();
     }
-} 
\ No newline at end of file
+}
@@ -1,19 +1,22 @@
 package com.phantomquery.service;
 
-import com.google.api.gax.core.FixedCredentialsProvider;
-import com.google.auth.oauth2.GoogleCredentials;
-import com.google.cloud.speech.v1.*;
 import com.google.protobuf.ByteString;
+import com.phantomquery.audio.AudioConverter;
+import com.phantomquery.audio.AudioReplayBuffer;
+import com.phantomquery.model.StreamingTranscript;
+import com.phantomquery.speech.SpeechRecognizer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
-import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,260 +25,375 @@ import java.util.logging.Logger;
 public class StreamingSpeechToTextService {
 
     private static final Logger LOGGER = Logger.getLogger(StreamingSpeechToTextService.class.getName());
-    
-    private SpeechClient speechClient;
-    private SpeechSettings speechSettings;
-    private boolean googleCloudAvailable = false;
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
-    
-    // Map to store active streaming sessions
-    private final Map<String, Object> responseObservers = new ConcurrentHashMap<>();
-    private final Map<String, Object> streamingCallables = new ConcurrentHashMap<>();
-    
-    @PostConstruct
-    public void init() {
-        LOGGER.info("Initializing StreamingSpeechToTextService...");
-        try {
-            // Check for Google Cloud credentials
-            String credentialsPath = System.getenv("GOOGLE_APPLICATION_CREDENTIALS");
-            LOGGER.info("GOOGLE_APPLICATION_CREDENTIALS environment variable: " + 
-                        (credentialsPath != null ? credentialsPath : "Not set"));
-            
-            // Initialize Google Cloud Speech client
-            LOGGER.info("Attempting to create Google Cloud Speech client...");
-            
-            // Create credentials provider
-            GoogleCredentials credentials = GoogleCredentials.getApplicationDefault();
-            FixedCredentialsProvider credentialsProvider = FixedCredentialsProvider.create(credentials);
-            
-            // Create speech settings
-            speechSettings = SpeechSettings.newBuilder()
-                    .setCredentialsProvider(credentialsProvider)
-                    .build();
-            
-            // Create speech client
-            speechClient = SpeechClient.create(speechSettings);
-            googleCloudAvailable = true;
-            LOGGER.info("Google Cloud Speech client initialized successfully");
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Failed to initialize Google Cloud Speech client", e);
-            googleCloudAvailable = false;
-            LOGGER.warning("Falling back to simulated speech recognition");
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Unexpected error initializing Google Cloud Speech client", e);
-            googleCloudAvailable = false;
-            LOGGER.warning("Falling back to simulated speech recognition");
-        }
+
+    // Streams carry 16kHz mono LINEAR16, i.e. 32 bytes per millisecond of audio
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BYTES_PER_MILLI = SAMPLE_RATE * 2 / 1000;
+    private static final AudioFormat STREAM_FORMAT = AudioConverter.TARGET_FORMAT;
+    // Input copied out of a ByteString per conversion pass for streams in other formats
+    private static final int CONVERSION_CHUNK_BYTES = 8192;
+    // Consecutive rollovers without any response before the session is given up
+    private static final int MAX_UNPRODUCTIVE_ROLLOVERS = 3;
+
+    // Google closes a stream after roughly five minutes; roll over to a fresh one before that
+    @Value("${speech.streaming.max-stream-duration-ms:290000}")
+    private long maxStreamDurationMs;
+
+    // How much unacknowledged audio to keep for replay into the next stream
+    @Value("${speech.streaming.replay-buffer-ms:10000}")
+    private long replayBufferMs;
+
+    private final SpeechRecognizer recognizer;
+
+    // Active streaming sessions by session id
+    private final Map<String, StreamingSession> sessions = new ConcurrentHashMap<>();
+
+    public StreamingSpeechToTextService(SpeechRecognizer recognizer, MeterRegistry meterRegistry) {
+        this.recognizer = recognizer;
+        Gauge.builder("phantomquery.speech.streams.active", sessions, Map::size)
+                .description("Open streaming recognition sessions")
+                .register(meterRegistry);
+        LOGGER.info("Initializing StreamingSpeechToTextService with engine: " + recognizer.getName());
     }
-    
+
     @PreDestroy
     public void cleanup() {
         LOGGER.info("Cleaning up StreamingSpeechToTextService...");
-        executorService.shutdown();
-        
+
         // Close all active streams
-        for (String sessionId : responseObservers.keySet()) {
+        for (String sessionId : sessions.keySet()) {
             stopStreamingRecognition(sessionId);
         }
-        
-        // Close the speech client
-        if (speechClient != null) {
-            speechClient.close();
-        }
     }
-    
-    public void startStreamingRecognition(String sessionId, Consumer<String> transcriptionCallback, Consumer<String> errorCallback) {
-        if (!googleCloudAvailable || speechClient == null) {
-            LOGGER.warning("Google Cloud Speech-to-Text not available, using simulated recognition");
-            errorCallback.accept("Google Cloud Speech-to-Text not available. Check logs for details.");
+
+    public void startStreamingRecognition(String sessionId, Consumer<StreamingTranscript> transcriptionCallback, Consumer<String> errorCallback) {
+        startStreamingRecognition(sessionId, STREAM_FORMAT, transcriptionCallback, errorCallback);
+    }
+
+    /**
+     * Starts a session whose audio arrives in {@code inputFormat}; it is downmixed and resampled
+     * to 16kHz mono before it reaches the recognizer.
+     */
+    public void startStreamingRecognition(String sessionId, AudioFormat inputFormat,
+                                          Consumer<StreamingTranscript> transcriptionCallback, Consumer<String> errorCallback) {
+        if (!AudioConverter.canConvert(inputFormat)) {
+            errorCallback.accept("Unsupported audio format: " + inputFormat);
             return;
         }
-        
+        if (!recognizer.isAvailable()) {
+            LOGGER.warning("Speech recognition engine '" + recognizer.getName() + "' not available");
+            errorCallback.accept("Speech recognition engine '" + recognizer.getName() + "' not available. Check logs for details.");
+            return;
+        }
+
         LOGGER.info("Starting streaming recognition for session: " + sessionId);
-        
+
         try {
-            // Create recognition config
-            RecognitionConfig recognitionConfig = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setLanguageCode("en-US")
-                    .setSampleRateHertz(16000)
-                    .setAudioChannelCount(1)
-                    .build();
-            
-            // Create streaming config
-            StreamingRecognitionConfig streamingRecognitionConfig = StreamingRecognitionConfig.newBuilder()
-                    .setConfig(recognitionConfig)
-                    .setInterimResults(true)
-                    .build();
-            
-            // Create response observer using reflection to avoid direct dependency on specific classes
-            Object responseObserver = createResponseObserver(sessionId, transcriptionCallback, errorCallback);
-            
-            // Create streaming callable using reflection
-            Object streamingCallable = createStreamingCallable();
-            
-            // Start the stream using reflection
-            startStream(streamingCallable, responseObserver);
-            
-            // Send the initial config using reflection
-            sendInitialConfig(streamingCallable, streamingRecognitionConfig);
-            
-            // Store the response observer and streaming callable
-            responseObservers.put(sessionId, responseObserver);
-            streamingCallables.put(sessionId, streamingCallable);
-            
+            StreamingSession session = new StreamingSession(sessionId, inputFormat, transcriptionCallback, errorCallback);
+            session.open();
+
+            StreamingSession previous = sessions.put(sessionId, session);
+            if (previous != null) {
+                previous.close();
+            }
+
             LOGGER.info("Streaming recognition started for session: " + sessionId);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error starting streaming recognition", e);
             errorCallback.accept("Error starting streaming recognition: " + e.getMessage());
         }
     }
-    
-    private Object createResponseObserver(String sessionId, Consumer<String> transcriptionCallback, Consumer<String> errorCallback) {
-        try {
-            // Use reflection to create the response observer
-            Class<?> responseObserverClass = Class.forName("com.google.cloud.speech.v1.SpeechClient$StreamingRecognizeResponseObserver");
-            return java.lang.reflect.Proxy.newProxyInstance(
-                responseObserverClass.getClassLoader(),
-                new Class<?>[] { responseObserverClass },
-                (proxy, method, args) -> {
-                    String methodName = method.getName();
-                    if ("onNext".equals(methodName)) {
-                        Object response = args[0];
-                        processResponse(response, transcriptionCallback);
-                        return null;
-                    } else if ("onError".equals(methodName)) {
-                        Throwable t = (Throwable) args[0];
-                        LOGGER.log(Level.SEVERE, "Error in streaming recognition", t);
-                        errorCallback.accept("Error in streaming recognition: " + t.getMessage());
-                        responseObservers.remove(sessionId);
-                        streamingCallables.remove(sessionId);
-                        return null;
-                    } else if ("onComplete".equals(methodName)) {
-                        LOGGER.info("Streaming recognition completed for session: " + sessionId);
-                        responseObservers.remove(sessionId);
-                        streamingCallables.remove(sessionId);
-                        return null;
-                    }
-                    return method.invoke(proxy, args);
-                }
-            );
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error creating response observer", e);
-            throw new RuntimeException("Error creating response observer", e);
+
+    public void sendAudioData(String sessionId, byte[] audioData) {
+        sendAudioData(sessionId, ByteString.copyFrom(audioData));
+    }
+
+    public void sendAudioData(String sessionId, ByteString audioData) {
+        StreamingSession session = sessions.get(sessionId);
+        if (session == null) {
+            LOGGER.warning("No active streaming session: " + sessionId);
+            return;
+        }
+
+        session.send(audioData);
+    }
+
+    /**
+     * Ends the session's audio. Results the engine still produces for it, typically the final one
+     * for the last utterance, are delivered to the transcription callback after this returns.
+     */
+    public void stopStreamingRecognition(String sessionId) {
+        LOGGER.info("Stopping streaming recognition for session: " + sessionId);
+
+        StreamingSession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.close();
         }
+
+        LOGGER.info("Streaming recognition stopped for session: " + sessionId);
     }
-    
-    private void processResponse(Object response, Consumer<String> transcriptionCallback) {
-        try {
-            // Use reflection to process the response
-            java.lang.reflect.Method getResultsListMethod = response.getClass().getMethod("getResultsList");
-            java.util.List<?> resultsList = (java.util.List<?>) getResultsListMethod.invoke(response);
-            
-            for (Object result : resultsList) {
-                java.lang.reflect.Method getAlternativesListMethod = result.getClass().getMethod("getAlternativesList");
-                java.util.List<?> alternativesList = (java.util.List<?>) getAlternativesListMethod.invoke(result);
-                
-                if (!alternativesList.isEmpty()) {
-                    Object alternative = alternativesList.get(0);
-                    java.lang.reflect.Method getTranscriptMethod = alternative.getClass().getMethod("getTranscript");
-                    String transcript = (String) getTranscriptMethod.invoke(alternative);
-                    
-                    if (StringUtils.hasText(transcript)) {
-                        LOGGER.info("Received transcription: " + transcript);
-                        transcriptionCallback.accept(transcript);
-                    }
+
+    public int getActiveStreamCount() {
+        return sessions.size();
+    }
+
+    public boolean isRecognizerAvailable() {
+        return recognizer.isAvailable();
+    }
+
+    /**
+     * A client's logical recognition session. It spans any number of underlying engine streams:
+     * before a stream reaches the engine's duration limit, a new one is opened, the audio not yet
+     * covered by a final result is replayed into it, and result end times are shifted so clients
+     * see one continuous timeline.
+     */
+    private final class StreamingSession {
+        private final String sessionId;
+        private final Consumer<StreamingTranscript> transcriptionCallback;
+        private final Consumer<String> errorCallback;
+        private final AudioReplayBuffer replayBuffer = new AudioReplayBuffer(replayBufferMs * BYTES_PER_MILLI);
+        private final AudioConverter converter;
+        // Conversion buffers, allocated once per session and only used for non-16kHz-mono input
+        private final byte[] conversionInput;
+        private final byte[] conversionOutput;
+
+        private RecognitionStream current;
+        private long streamOpenedAt;
+        // Session byte offset of the first audio byte sent on the current stream
+        private long streamStartOffset;
+        // Total audio bytes received for this session
+        private long sessionOffset;
+        private int unproductiveRollovers;
+        private int rollovers;
+        // Stopped by the client: no more audio is taken, but results keep coming until the current
+        // stream ends, so the final result for the last utterance still reaches the client
+        private boolean stopping;
+        private boolean closed;
+
+        StreamingSession(String sessionId, AudioFormat inputFormat,
+                         Consumer<StreamingTranscript> transcriptionCallback, Consumer<String> errorCallback) {
+            this.sessionId = sessionId;
+            this.transcriptionCallback = transcriptionCallback;
+            this.errorCallback = errorCallback;
+            this.converter = new AudioConverter(inputFormat);
+            this.conversionInput = converter.isPassthrough() ? null : new byte[CONVERSION_CHUNK_BYTES];
+            this.conversionOutput = converter.isPassthrough() ? null : new byte[converter.maxOutputBytes(CONVERSION_CHUNK_BYTES)];
+            if (!converter.isPassthrough()) {
+                LOGGER.info("Session " + sessionId + " converts " + inputFormat + " to 16kHz mono");
+            }
+        }
+
+        synchronized void open() {
+            RecognitionStream stream = new RecognitionStream(this);
+            stream.engineStream = recognizer.openStream(STREAM_FORMAT, stream);
+            current = stream;
+            streamOpenedAt = System.nanoTime();
+        }
+
+        synchronized void send(ByteString audio) {
+            if (closed || stopping) {
+                return;
+            }
+            if (converter.isPassthrough()) {
+                sendConverted(audio);
+                return;
+            }
+            for (int offset = 0; offset < audio.size() && !closed; offset += conversionInput.length) {
+                int length = Math.min(conversionInput.length, audio.size() - offset);
+                audio.copyTo(conversionInput, offset, 0, length);
+                int converted = converter.convert(conversionInput, 0, length, conversionOutput, 0);
+                if (converted > 0) {
+                    // The replay buffer keeps what is sent, so the output buffer cannot be wrapped
+                    sendConverted(ByteString.copyFrom(conversionOutput, 0, converted));
                 }
             }
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error processing response", e);
         }
-    }
-    
-    private Object createStreamingCallable() {
-        try {
-            // Use reflection to create the streaming callable
-            java.lang.reflect.Method streamingRecognizeCallableMethod = speechClient.getClass().getMethod("streamingRecognizeCallable");
-            return streamingRecognizeCallableMethod.invoke(speechClient);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error creating streaming callable", e);
-            throw new RuntimeException("Error creating streaming callable", e);
+
+        private void sendConverted(ByteString audio) {
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - streamOpenedAt) >= maxStreamDurationMs) {
+                rollover("stream duration limit");
+                if (closed) {
+                    return;
+                }
+            }
+            replayBuffer.append(sessionOffset, audio);
+            sessionOffset += audio.size();
+            current.send(audio);
         }
-    }
-    
-    private void startStream(Object streamingCallable, Object responseObserver) {
-        try {
-            // Use reflection to start the stream
-            java.lang.reflect.Method startMethod = streamingCallable.getClass().getMethod("start", responseObserver.getClass());
-            startMethod.invoke(streamingCallable, responseObserver);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error starting stream", e);
-            throw new RuntimeException("Error starting stream", e);
+
+        /**
+         * Retires the current stream and continues on a new one, replaying unacknowledged audio.
+         */
+        private void rollover(String reason) {
+            RecognitionStream previous = current;
+            previous.retired = true;
+            previous.closeSend();
+
+            long replayFrom = replayBuffer.firstOffset(sessionOffset);
+            LOGGER.info("Rolling over streaming recognition for session " + sessionId + " (" + reason + "), replaying " +
+                        (sessionOffset - replayFrom) / BYTES_PER_MILLI + " ms of audio");
+            try {
+                open();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Error reopening stream for session " + sessionId, e);
+                fail("Error reopening streaming recognition: " + e.getMessage());
+                return;
+            }
+            rollovers++;
+            streamStartOffset = replayFrom;
+            replayBuffer.replay(current::send);
         }
-    }
-    
-    private void sendInitialConfig(Object streamingCallable, StreamingRecognitionConfig streamingRecognitionConfig) {
-        try {
-            // Create the initial request
-            StreamingRecognizeRequest request = StreamingRecognizeRequest.newBuilder()
-                    .setAudioContent(ByteString.EMPTY)
-                    .setStreamingConfig(streamingRecognitionConfig)
-                    .build();
-            
-            // Use reflection to send the initial config
-            java.lang.reflect.Method sendMethod = streamingCallable.getClass().getMethod("send", StreamingRecognizeRequest.class);
-            sendMethod.invoke(streamingCallable, request);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error sending initial config", e);
-            throw new RuntimeException("Error sending initial config", e);
+
+        synchronized void onResult(RecognitionStream stream, StreamingTranscript transcript) {
+            if (stream != current || closed) {
+                return;
+            }
+            unproductiveRollovers = 0;
+            // Shift the per-stream end time onto the session timeline
+            long streamEndMillis = transcript.resultEndTime().toMillis();
+            Duration sessionEndTime = Duration.ofMillis(streamStartOffset / BYTES_PER_MILLI + streamEndMillis);
+            if (transcript.isFinal()) {
+                // Audio up to the end of a final result never needs to be replayed
+                replayBuffer.acknowledge(streamStartOffset + streamEndMillis * BYTES_PER_MILLI);
+            }
+            if (StringUtils.hasText(transcript.transcript())) {
+                LOGGER.fine("Received transcription for session " + sessionId + ": " + transcript.transcript());
+                transcriptionCallback.accept(new StreamingTranscript(transcript.transcript(), transcript.isFinal(),
+                        transcript.stability(), sessionEndTime));
+            }
         }
-    }
-    
-    public void sendAudioData(String sessionId, byte[] audioData) {
-        if (!googleCloudAvailable || speechClient == null) {
-            LOGGER.warning("Google Cloud Speech-to-Text not available, cannot send audio data");
-            return;
+
+        synchronized void onStreamExpired(RecognitionStream stream) {
+            if (stream != current || closed) {
+                return;
+            }
+            if (stopping) {
+                finish();
+                return;
+            }
+            if (unproductiveRollovers < MAX_UNPRODUCTIVE_ROLLOVERS) {
+                unproductiveRollovers++;
+                rollover("stream expired by engine");
+                return;
+            }
+            fail("Streaming recognition keeps expiring without results");
         }
-        
-        Object streamingCallable = streamingCallables.get(sessionId);
-        if (streamingCallable == null) {
-            LOGGER.warning("No active streaming callable for session: " + sessionId);
-            return;
+
+        synchronized void onStreamError(RecognitionStream stream, Throwable t) {
+            if (stream != current || closed) {
+                return;
+            }
+            if (stopping) {
+                // The client has gone; only whatever was still being recognized is lost
+                LOGGER.log(Level.WARNING, "Error draining streaming recognition for session " + sessionId, t);
+                finish();
+                return;
+            }
+            LOGGER.log(Level.SEVERE, "Error in streaming recognition for session " + sessionId, t);
+            fail("Error in streaming recognition: " + t.getMessage());
         }
-        
-        try {
-            // Create audio content request
-            StreamingRecognizeRequest request = StreamingRecognizeRequest.newBuilder()
-                    .setAudioContent(ByteString.copyFrom(audioData))
-                    .build();
-            
-            // Use reflection to send the audio data
-            java.lang.reflect.Method sendMethod = streamingCallable.getClass().getMethod("send", StreamingRecognizeRequest.class);
-            sendMethod.invoke(streamingCallable, request);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error sending audio data", e);
+
+        synchronized void onStreamComplete(RecognitionStream stream) {
+            if (stream != current || closed) {
+                return;
+            }
+            if (stopping) {
+                finish();
+                return;
+            }
+            // The engine ended a stream we did not close; keep the session alive on a new one
+            if (unproductiveRollovers < MAX_UNPRODUCTIVE_ROLLOVERS) {
+                unproductiveRollovers++;
+                rollover("stream completed by engine");
+                return;
+            }
+            fail("Streaming recognition keeps ending without results");
+        }
+
+        /**
+         * Ends the audio; the session finishes once the engine has delivered the last results.
+         */
+        synchronized void close() {
+            if (closed || stopping) {
+                return;
+            }
+            stopping = true;
+            current.closeSend();
+        }
+
+        private void finish() {
+            closed = true;
+            current.retired = true;
+            replayBuffer.clear();
+            if (rollovers > 0) {
+                LOGGER.info("Session " + sessionId + " used " + (rollovers + 1) + " streams");
+            }
+        }
+
+        private void fail(String message) {
+            closed = true;
+            current.retired = true;
+            replayBuffer.clear();
+            sessions.remove(sessionId, this);
+            errorCallback.accept(message);
         }
     }
-    
-    public void stopStreamingRecognition(String sessionId) {
-        LOGGER.info("Stopping streaming recognition for session: " + sessionId);
-        
-        Object streamingCallable = streamingCallables.remove(sessionId);
-        if (streamingCallable != null) {
+
+    /**
+     * One underlying engine stream. Events are routed to the owning session, which ignores
+     * them once this stream has been replaced.
+     */
+    private static final class RecognitionStream implements SpeechRecognizer.StreamListener {
+        private final StreamingSession owner;
+        private SpeechRecognizer.Stream engineStream;
+        private volatile boolean retired;
+
+        RecognitionStream(StreamingSession owner) {
+            this.owner = owner;
+        }
+
+        void send(ByteString audio) {
             try {
-                // Use reflection to close the stream
-                java.lang.reflect.Method closeSendMethod = streamingCallable.getClass().getMethod("closeSend");
-                closeSendMethod.invoke(streamingCallable);
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Error closing streaming callable", e);
+                engineStream.send(audio);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Error sending audio data for session " + owner.sessionId, e);
+            }
+        }
+
+        void closeSend() {
+            try {
+                engineStream.closeSend();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Error closing stream for session " + owner.sessionId, e);
+            }
+        }
+
+        @Override
+        public void onResult(StreamingTranscript transcript) {
+            if (!retired) {
+                owner.onResult(this, transcript);
+            }
+        }
+
+        @Override
+        public void onExpired() {
+            if (!retired) {
+                owner.onStreamExpired(this);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (!retired) {
+                owner.onStreamError(this, t);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!retired) {
+                owner.onStreamComplete(this);
             }
         }
-        
-        responseObservers.remove(sessionId);
-        LOGGER.info("Streaming recognition stopped for session: " + sessionId);
-    }
-    
-    public boolean isGoogleCloudAvailable() {
-        return googleCloudAvailable;
     }
-} 
\ No newline at end of file
+}
@@ -1,34 +1,127 @@
 package com.phantomquery.service;
 
+import com.google.protobuf.ByteString;
+import com.phantomquery.audio.AudioConverter;
+import com.phantomquery.audio.AudioRingBuffer;
+import com.phantomquery.audio.OverflowPolicy;
+import com.phantomquery.audio.SpeechEndpointer;
+import com.phantomquery.audio.VadSettings;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import javax.sound.sampled.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.io.ByteArrayOutputStream;
-import java.util.Arrays;
 
+/**
+ * Captures system audio in three stages so the capture line is always drained, however slow
+ * recognition gets:
+ * <ol>
+ *   <li>the capture thread only reads the line into pooled buffers and queues them;</li>
+ *   <li>the processing thread converts to 16kHz mono, keeps the retention window and either cuts
+ *       utterances for batch recognition or feeds a streaming recognition session;</li>
+ *   <li>the recognition thread submits queued utterances with a cap on requests in flight.</li>
+ * </ol>
+ * Both queues are bounded and apply an {@link OverflowPolicy} instead of blocking the stage in
+ * front of them; drops are counted in {@link #getPipelineStats()}.
+ */
 @Service
 public class SystemAudioCaptureService {
     private TargetDataLine line;
     private AudioFormat format;
     private Thread captureThread;
+    private Thread processingThread;
+    private Thread recognitionThread;
     private final AtomicBoolean isRecording = new AtomicBoolean(false);
     private final SpeechToTextService speechToTextService;
+    private final StreamingSpeechToTextService streamingSpeechToTextService;
     private final OpenAiService openAiService;
-    private final BlockingQueue<byte[]> audioBuffer = new LinkedBlockingQueue<>();
+    private final VadSettings vadSettings;
+    // Cuts the captured stream into utterances; only speech reaches the recognizer
+    private SpeechEndpointer endpointer;
     private static final int BUFFER_SIZE = 4096;
-    private static final int MAX_BUFFER_COUNT = 20; // Process every 20 buffers for better recognition
+    private static final long POLL_INTERVAL_MS = 100;
+    // Minimum time between attempts to replace a streaming session that ended
+    private static final long STREAM_RESTART_DELAY_MS = 5000;
+
+    // Pipeline configuration
+    private final int captureBufferCount;
+    private final OverflowPolicy captureOverflowPolicy;
+    private final OverflowPolicy segmentOverflowPolicy;
+    private final int maxConcurrentRecognitions;
+    private final boolean streamingMode;
+
+    // Capture -> processing: a fixed pool of read buffers cycling between these two queues
+    private final BlockingQueue<AudioChunk> freeChunks;
+    private final BlockingQueue<AudioChunk> capturedChunks;
+    // Processing -> recognition
+    private final BlockingQueue<ByteString> segmentQueue;
+    private final Semaphore recognitionPermits;
+    private volatile boolean segmentsComplete;
+    private volatile String streamSessionId;
+    // Set once the current streaming session has ended; processing then starts a new one
+    private volatile boolean streamEnded;
+    // Processing thread only, after startCapture
+    private long streamRestartAt;
+
+    private final AtomicLong capturedChunkCount = new AtomicLong();
+    private final AtomicLong droppedChunkCount = new AtomicLong();
+    private final AtomicLong queuedSegmentCount = new AtomicLong();
+    private final AtomicLong droppedSegmentCount = new AtomicLong();
+    // Captured audio is kept as 16kHz 16-bit mono
+    private static final int BYTES_PER_MILLI = AudioConverter.TARGET_SAMPLE_RATE * 2 / 1000;
     private final AtomicReference<String> lastTranscription = new AtomicReference<>("");
     private final AtomicReference<String> lastAiResponse = new AtomicReference<>("");
-    private ByteArrayOutputStream audioDataStream;
+    // The most recent captured audio, bounded by the retention window
+    private final AudioRingBuffer capturedAudio;
 
-    public SystemAudioCaptureService(SpeechToTextService speechToTextService, OpenAiService openAiService) {
+    public SystemAudioCaptureService(SpeechToTextService speechToTextService,
+                                     StreamingSpeechToTextService streamingSpeechToTextService,
+                                     OpenAiService openAiService,
+                                     VadSettings vadSettings,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${audio.capture.retention-ms:60000}") int retentionMs,
+                                     @Value("${audio.pipeline.capture-buffers:64}") int captureBufferCount,
+                                     @Value("${audio.pipeline.capture-overflow:DROP_OLDEST}") OverflowPolicy captureOverflowPolicy,
+                                     @Value("${audio.pipeline.segment-queue-capacity:8}") int segmentQueueCapacity,
+                                     @Value("${audio.pipeline.segment-overflow:DROP_OLDEST}") OverflowPolicy segmentOverflowPolicy,
+                                     @Value("${audio.pipeline.max-concurrent-recognitions:2}") int maxConcurrentRecognitions,
+                                     @Value("${audio.pipeline.streaming:false}") boolean streamingMode) {
         this.speechToTextService = speechToTextService;
+        this.streamingSpeechToTextService = streamingSpeechToTextService;
         this.openAiService = openAiService;
-        this.audioDataStream = new ByteArrayOutputStream();
+        this.vadSettings = vadSettings;
+        this.capturedAudio = new AudioRingBuffer(retentionMs * BYTES_PER_MILLI, 2);
+        this.captureBufferCount = captureBufferCount;
+        this.captureOverflowPolicy = captureOverflowPolicy;
+        this.segmentOverflowPolicy = segmentOverflowPolicy;
+        this.maxConcurrentRecognitions = maxConcurrentRecognitions;
+        this.streamingMode = streamingMode;
+
+        this.freeChunks = new ArrayBlockingQueue<>(captureBufferCount);
+        this.capturedChunks = new ArrayBlockingQueue<>(captureBufferCount);
+        for (int i = 0; i < captureBufferCount; i++) {
+            freeChunks.add(new AudioChunk(BUFFER_SIZE));
+        }
+        this.segmentQueue = new ArrayBlockingQueue<>(segmentQueueCapacity);
+        this.recognitionPermits = new Semaphore(maxConcurrentRecognitions);
+        Gauge.builder("phantomquery.queue.depth", capturedChunks, BlockingQueue::size)
+                .description("Items waiting in a pipeline queue")
+                .tag("queue", "capture.chunks")
+                .register(meterRegistry);
+        Gauge.builder("phantomquery.queue.depth", segmentQueue, BlockingQueue::size)
+                .description("Items waiting in a pipeline queue")
+                .tag("queue", "capture.segments")
+                .register(meterRegistry);
     }
 
     public void startCapture() {
@@ -37,8 +130,12 @@ public class SystemAudioCaptureService {
         }
 
         try {
-            // Reset the audio data stream
-            audioDataStream = new ByteArrayOutputStream();
+            // Forget audio from any previous capture
+            capturedAudio.clear();
+            freeChunks.addAll(capturedChunks);
+            capturedChunks.clear();
+            segmentQueue.clear();
+            segmentsComplete = false;
             
             // Try to find a supported format
             AudioFormat[] formats = {
@@ -97,39 +194,32 @@ public class SystemAudioCaptureService {
                 throw new RuntimeException("No compatible audio format found for your system");
             }
             
-            // Get and open the target data line
+            if (!AudioConverter.canConvert(format)) {
+                throw new RuntimeException("Unsupported capture format: " + format);
+            }
+            // Everything downstream of the capture line works on 16kHz mono
+            AudioConverter converter = new AudioConverter(format);
+            endpointer = new SpeechEndpointer(AudioConverter.TARGET_FORMAT, vadSettings, this::queueSpeechSegment);
+
+            // Get and open the target data line; the streaming session only once it is open
             line = (TargetDataLine) AudioSystem.getLine(info);
             line.open(format);
+            if (streamingMode) {
+                startStreamingSession();
+            }
             line.start();
 
             isRecording.set(true);
 
-            // Start the capture thread
-            captureThread = new Thread(() -> {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int bufferCount = 0;
-                
-                while (isRecording.get()) {
-                    int count = line.read(buffer, 0, buffer.length);
-                    if (count > 0) {
-                        // Add the buffer to the queue
-                        byte[] audioData = new byte[count];
-                        System.arraycopy(buffer, 0, audioData, 0, count);
-                        audioBuffer.offer(audioData);
-                        audioDataStream.write(audioData, 0, count);
-                        bufferCount++;
-                        
-                        // Process accumulated audio data periodically
-                        if (bufferCount >= MAX_BUFFER_COUNT) {
-                            processAccumulatedAudio();
-                            bufferCount = 0;
-                        }
-                    }
-                }
-            });
-            
+            // Start the pipeline back to front so every stage has a consumer
+            recognitionThread = new Thread(this::runRecognition, "audio-recognition");
+            processingThread = new Thread(() -> runProcessing(converter), "audio-processing");
+            captureThread = new Thread(this::runCapture, "audio-capture");
+            recognitionThread.start();
+            processingThread.start();
             captureThread.start();
-            System.out.println("Started system audio capture with format: " + format);
+            System.out.println("Started system audio capture with format: " + format +
+                               (streamingMode ? " (streaming recognition)" : " (segmented recognition)"));
             
         } catch (LineUnavailableException e) {
             System.err.println("Failed to start audio capture: " + e.getMessage());
@@ -138,42 +228,165 @@ public class SystemAudioCaptureService {
         }
     }
     
-    private void processAccumulatedAudio() {
+    /**
+     * Stage 1: keep the line drained. Never blocks on anything but the line itself.
+     */
+    private void runCapture() {
+        byte[] overflowBuffer = new byte[BUFFER_SIZE];
+        while (isRecording.get()) {
+            AudioChunk chunk = freeChunks.poll();
+            if (chunk == null && captureOverflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                // Processing is behind; reuse the oldest unprocessed buffer
+                chunk = capturedChunks.poll();
+                if (chunk != null) {
+                    droppedChunkCount.incrementAndGet();
+                }
+            }
+            if (chunk == null) {
+                // Read and discard, so the line itself never overruns
+                line.read(overflowBuffer, 0, overflowBuffer.length);
+                droppedChunkCount.incrementAndGet();
+                continue;
+            }
+            chunk.length = line.read(chunk.data, 0, chunk.data.length);
+            if (chunk.length > 0) {
+                capturedChunks.offer(chunk);
+                capturedChunkCount.incrementAndGet();
+            } else {
+                freeChunks.offer(chunk);
+            }
+        }
+    }
+
+    /**
+     * Stage 2: convert, retain and segment (or stream). Runs until capture has stopped and
+     * every captured buffer is processed.
+     */
+    private void runProcessing(AudioConverter converter) {
+        byte[] converted = new byte[converter.maxOutputBytes(BUFFER_SIZE)];
         try {
-            // Calculate total size of accumulated audio
-            int totalSize = 0;
-            for (byte[] buffer : audioBuffer) {
-                totalSize += buffer.length;
+            while (isRecording.get() || !capturedChunks.isEmpty()) {
+                AudioChunk chunk = capturedChunks.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    continue;
+                }
+                int convertedCount = converter.convert(chunk.data, 0, chunk.length, converted, 0);
+                freeChunks.offer(chunk);
+
+                capturedAudio.write(converted, 0, convertedCount);
+                if (streamingMode) {
+                    if (streamEnded && !restartStreamingSession()) {
+                        // No session to send to until the next attempt; the audio is still retained
+                        continue;
+                    }
+                    // The streaming session keeps what it is sent for replay, so it gets its own copy
+                    streamingSpeechToTextService.sendAudioData(streamSessionId, ByteString.copyFrom(converted, 0, convertedCount));
+                } else {
+                    // Completed utterances are handed to queueSpeechSegment
+                    endpointer.accept(converted, 0, convertedCount);
+                }
             }
-            
-            // Combine all buffers into a single byte array
-            byte[] combinedAudio = new byte[totalSize];
-            int offset = 0;
-            while (!audioBuffer.isEmpty()) {
-                byte[] buffer = audioBuffer.poll();
-                System.arraycopy(buffer, 0, combinedAudio, offset, buffer.length);
-                offset += buffer.length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (streamingMode) {
+                streamingSpeechToTextService.stopStreamingRecognition(streamSessionId);
+            } else {
+                // Recognize whatever was being said when capture stopped
+                endpointer.flush();
+                System.out.println("Voice activity: " + endpointer.getSpeechFrameCount() + " speech frames, " +
+                                   endpointer.getSilenceFrameCount() + " silent frames, " +
+                                   endpointer.getSegmentCount() + " utterances");
             }
-            
-            // Process the combined audio data
-            String transcription = speechToTextService.convertSpeechToText(combinedAudio);
-            
-            // Only process if we have meaningful transcription
-            if (transcription != null && !transcription.isEmpty() && 
-                !transcription.contains("No speech detected") && 
-                !transcription.contains("Error processing audio")) {
-                
-                System.out.println("Transcription: " + transcription);
-                lastTranscription.set(transcription);
-                
-                // We no longer automatically send to OpenAI
-                // The UI will handle this through the "Get Answers" button
-                lastAiResponse.set("Click 'Get Answers' in the UI to process with OpenAI");
+            segmentsComplete = true;
+        }
+    }
+
+    private void queueSpeechSegment(byte[] utterance, int length) {
+        // The endpointer reuses its buffer, so the utterance is copied once for the recognizer
+        ByteString audio = ByteString.copyFrom(utterance, 0, length);
+        queuedSegmentCount.incrementAndGet();
+        if (segmentQueue.offer(audio)) {
+            return;
+        }
+        droppedSegmentCount.incrementAndGet();
+        if (segmentOverflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            segmentQueue.poll();
+            segmentQueue.offer(audio);
+        }
+        System.err.println("Recognition is behind, dropped a queued speech segment (" + segmentOverflowPolicy + ")");
+    }
+
+    /**
+     * Stage 3: submit utterances to the recognizer pool, with at most
+     * {@code maxConcurrentRecognitions} in flight so capture never floods the shared pool.
+     */
+    private void runRecognition() {
+        try {
+            while (!segmentsComplete || !segmentQueue.isEmpty()) {
+                ByteString audio = segmentQueue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (audio == null) {
+                    continue;
+                }
+                recognitionPermits.acquire();
+                speechToTextService.transcribeAsync(audio, AudioConverter.TARGET_FORMAT)
+                        .whenComplete((result, error) -> {
+                            recognitionPermits.release();
+                            if (error != null) {
+                                System.err.println("Error transcribing captured audio: " + error.getMessage());
+                                return;
+                            }
+                            onTranscription(result.text());
+                        });
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startStreamingSession() {
+        String sessionId = "system-capture-" + UUID.randomUUID();
+        streamSessionId = sessionId;
+        streamEnded = false;
+        streamRestartAt = System.currentTimeMillis() + STREAM_RESTART_DELAY_MS;
+        streamingSpeechToTextService.startStreamingRecognition(sessionId,
+                transcript -> {
+                    if (transcript.isFinal()) {
+                        onTranscription(transcript.transcript());
+                    }
+                },
+                error -> {
+                    System.err.println("Streaming recognition error for system capture: " + error);
+                    // A late error from a session already replaced says nothing about the current one
+                    if (sessionId.equals(streamSessionId)) {
+                        streamEnded = true;
+                    }
+                });
+    }
+
+    /**
+     * Replaces a streaming session that ended while capture is still running, at most once per
+     * {@link #STREAM_RESTART_DELAY_MS}. Returns whether there is a session to send to.
+     */
+    private boolean restartStreamingSession() {
+        if (System.currentTimeMillis() < streamRestartAt) {
+            return false;
+        }
+        System.out.println("Streaming recognition for system capture ended, starting a new session");
+        streamingSpeechToTextService.stopStreamingRecognition(streamSessionId);
+        startStreamingSession();
+        return !streamEnded;
+    }
+
+    private void onTranscription(String text) {
+        // Only process if we have meaningful transcription
+        if (text != null && !text.isBlank()) {
+            System.out.println("Transcription: " + text);
+            lastTranscription.set(text);
             
-        } catch (Exception e) {
-            System.err.println("Error processing accumulated audio: " + e.getMessage());
-            e.printStackTrace();
+            // We no longer automatically send to OpenAI
+            // The UI will handle this through the "Get Answers" button
+            lastAiResponse.set("Click 'Get Answers' in the UI to process with OpenAI");
         }
     }
 
@@ -183,16 +396,33 @@ public class SystemAudioCaptureService {
             line.stop();
             line.close();
         }
-        if (captureThread != null) {
-            try {
-                captureThread.join();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        // Each stage finishes the work queued in front of it before exiting
+        for (Thread thread : new Thread[] {captureThread, processingThread, recognitionThread}) {
+            if (thread != null) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
         System.out.println("Stopped system audio capture");
     }
 
+    public Map<String, Object> getPipelineStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", streamingMode ? "streaming" : "segmented");
+        stats.put("capturedBuffers", capturedChunkCount.get());
+        stats.put("droppedBuffers", droppedChunkCount.get());
+        stats.put("bufferQueueDepth", capturedChunks.size());
+        stats.put("bufferQueueCapacity", captureBufferCount);
+        stats.put("queuedSegments", queuedSegmentCount.get());
+        stats.put("droppedSegments", droppedSegmentCount.get());
+        stats.put("segmentQueueDepth", segmentQueue.size());
+        stats.put("recognitionsInFlight", maxConcurrentRecognitions - recognitionPermits.availablePermits());
+        return stats;
+    }
+
     public boolean isCapturing() {
         return isRecording.get();
     }
@@ -205,7 +435,34 @@ public class SystemAudioCaptureService {
         return lastAiResponse.get();
     }
     
+    /**
+     * Everything still within the retention window, as 16kHz 16-bit mono PCM.
+     */
     public byte[] getCapturedAudio() {
-        return audioDataStream.toByteArray();
+        return capturedAudio.readLatest(capturedAudio.getCapacity());
+    }
+
+    /**
+     * The last {@code windowMs} of captured audio (less if not that much is retained), as
+     * 16kHz 16-bit mono PCM.
+     */
+    public byte[] getCapturedAudio(long windowMs) {
+        return capturedAudio.readLatest((int) Math.min(Integer.MAX_VALUE, windowMs * BYTES_PER_MILLI));
+    }
+
+    public long getRetainedAudioMillis() {
+        return capturedAudio.getRetainedBytes() / BYTES_PER_MILLI;
+    }
+
+    /**
+     * One pooled read buffer.
+     */
+    private static final class AudioChunk {
+        final byte[] data;
+        int length;
+
+        AudioChunk(int size) {
+            this.data = new byte[size];
+        }
     }
-} 
\ No newline at end of file
+}
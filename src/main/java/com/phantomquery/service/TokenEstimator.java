@@ -0,0 +1,33 @@
+package com.phantomquery.service;
+
+/**
+ * Cheap prompt token estimate for context budgeting. English text averages about four
+ * characters per token with the OpenAI tokenizers; short words and punctuation push that up, so
+ * the larger of the character and word based estimates is used. Every chat message also costs a
+ * few tokens of framing.
+ */
+public final class TokenEstimator {
+
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return MESSAGE_OVERHEAD;
+        }
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean whitespace = Character.isWhitespace(text.charAt(i));
+            if (!whitespace && !inWord) {
+                words++;
+            }
+            inWord = !whitespace;
+        }
+        int byChars = (text.length() + 3) / 4;
+        int byWords = (words * 4 + 2) / 3;
+        return Math.max(byChars, byWords) + MESSAGE_OVERHEAD;
+    }
+}
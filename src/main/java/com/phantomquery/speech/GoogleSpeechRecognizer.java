@@ -0,0 +1,191 @@
+package com.phantomquery.speech;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.ClientStream;
+import com.google.api.gax.rpc.ResponseObserver;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.api.gax.rpc.StreamController;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.speech.v1.*;
+import com.google.protobuf.ByteString;
+import com.phantomquery.model.StreamingTranscript;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sound.sampled.AudioFormat;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Google Cloud Speech-to-Text engine. Credentials come from GOOGLE_APPLICATION_CREDENTIALS.
+ */
+@Component
+@ConditionalOnProperty(name = "speech.engine", havingValue = "google", matchIfMissing = true)
+public class GoogleSpeechRecognizer implements SpeechRecognizer {
+    private static final Logger logger = LoggerFactory.getLogger(GoogleSpeechRecognizer.class);
+
+    private SpeechClient speechClient;
+    private boolean available = false;
+
+    public GoogleSpeechRecognizer(@Value("${speech.recognition.timeout-ms:10000}") long timeoutMs) {
+        try {
+            String credentialsPath = System.getenv("GOOGLE_APPLICATION_CREDENTIALS");
+            logger.info("GOOGLE_APPLICATION_CREDENTIALS environment variable: {}",
+                        credentialsPath != null ? credentialsPath : "Not set");
+
+            GoogleCredentials credentials = GoogleCredentials.getApplicationDefault();
+            SpeechSettings.Builder speechSettings = SpeechSettings.newBuilder()
+                    .setCredentialsProvider(FixedCredentialsProvider.create(credentials));
+            // The unary call waits uninterruptibly, so it needs its own deadline; without retries, so
+            // it never outlives the timeout after which SpeechToTextService gives up on it
+            speechSettings.recognizeSettings().setSimpleTimeoutNoRetries(org.threeten.bp.Duration.ofMillis(timeoutMs));
+            speechClient = SpeechClient.create(speechSettings.build());
+            available = true;
+            logger.info("Google Cloud Speech client initialized");
+        } catch (Exception e) {
+            logger.error("Failed to initialize Google Cloud Speech client: {}", e.getMessage());
+            available = false;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (speechClient != null) {
+            speechClient.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "google";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public String recognize(ByteString audio, AudioFormat format) {
+        requireAvailable();
+        logger.info("Recognizing speech with Google Cloud, audio size: {} bytes, sample rate: {}, channels: {}",
+                    audio.size(), format.getSampleRate(), format.getChannels());
+
+        RecognitionConfig config = RecognitionConfig.newBuilder()
+                .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
+                .setLanguageCode("en-US")
+                .setSampleRateHertz((int) format.getSampleRate())
+                .setAudioChannelCount(format.getChannels())
+                .setEnableAutomaticPunctuation(true)
+                .setModel("video")
+                .build();
+
+        RecognitionAudio recognitionAudio = RecognitionAudio.newBuilder()
+                .setContent(audio)
+                .build();
+
+        RecognizeResponse response = speechClient.recognize(config, recognitionAudio);
+        List<SpeechRecognitionResult> results = response.getResultsList();
+        logger.info("Received response from Google Cloud Speech-to-Text API with {} results", results.size());
+
+        StringBuilder transcription = new StringBuilder();
+        for (SpeechRecognitionResult result : results) {
+            for (SpeechRecognitionAlternative alternative : result.getAlternativesList()) {
+                transcription.append(alternative.getTranscript()).append(" ");
+            }
+        }
+        return transcription.toString().trim();
+    }
+
+    @Override
+    public Stream openStream(AudioFormat format, StreamListener listener) {
+        requireAvailable();
+
+        RecognitionConfig recognitionConfig = RecognitionConfig.newBuilder()
+                .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
+                .setLanguageCode("en-US")
+                .setSampleRateHertz((int) format.getSampleRate())
+                .setAudioChannelCount(format.getChannels())
+                .build();
+
+        StreamingRecognitionConfig streamingConfig = StreamingRecognitionConfig.newBuilder()
+                .setConfig(recognitionConfig)
+                .setInterimResults(true)
+                .build();
+
+        // Open the bidirectional stream; the first request carries only the config
+        ClientStream<StreamingRecognizeRequest> clientStream =
+                speechClient.streamingRecognizeCallable().splitCall(new ListenerAdapter(listener));
+        clientStream.send(StreamingRecognizeRequest.newBuilder()
+                .setStreamingConfig(streamingConfig)
+                .build());
+
+        return new Stream() {
+            @Override
+            public void send(ByteString audio) {
+                clientStream.send(StreamingRecognizeRequest.newBuilder()
+                        .setAudioContent(audio)
+                        .build());
+            }
+
+            @Override
+            public void closeSend() {
+                clientStream.closeSend();
+            }
+        };
+    }
+
+    private void requireAvailable() {
+        if (!available) {
+            throw new IllegalStateException("Google Cloud Speech-to-Text not available. Check logs for details.");
+        }
+    }
+
+    private static final class ListenerAdapter implements ResponseObserver<StreamingRecognizeResponse> {
+        private final StreamListener listener;
+
+        ListenerAdapter(StreamListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onStart(StreamController controller) {
+        }
+
+        @Override
+        public void onResponse(StreamingRecognizeResponse response) {
+            for (StreamingRecognitionResult result : response.getResultsList()) {
+                if (result.getAlternativesCount() == 0) {
+                    continue;
+                }
+                com.google.protobuf.Duration endTime = result.getResultEndTime();
+                listener.onResult(new StreamingTranscript(
+                        result.getAlternatives(0).getTranscript(),
+                        result.getIsFinal(),
+                        result.getStability(),
+                        Duration.ofSeconds(endTime.getSeconds(), endTime.getNanos())));
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // Streams are capped at about five minutes; the service reports that as OUT_OF_RANGE
+            if (t instanceof ApiException
+                    && ((ApiException) t).getStatusCode().getCode() == StatusCode.Code.OUT_OF_RANGE) {
+                listener.onExpired();
+            } else {
+                listener.onError(t);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            listener.onComplete();
+        }
+    }
+}
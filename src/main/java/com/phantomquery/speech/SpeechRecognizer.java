@@ -0,0 +1,61 @@
+package com.phantomquery.speech;
+
+import com.google.protobuf.ByteString;
+import com.phantomquery.model.StreamingTranscript;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Speech recognition engine used by both the batch and the streaming services. Exactly one
+ * implementation is active per deployment, selected with the {@code speech.engine} property.
+ *
+ * Audio is passed as immutable {@link ByteString}s so callers can hand over wrapped buffers
+ * without copying.
+ */
+public interface SpeechRecognizer {
+
+    /**
+     * Short engine name as used in {@code speech.engine}.
+     */
+    String getName();
+
+    /**
+     * False when the engine could not be initialized (e.g. missing credentials).
+     */
+    boolean isAvailable();
+
+    /**
+     * Recognizes one complete utterance and returns its text, empty when no speech was found.
+     * Blocks the calling thread; callers are expected to run this on their own executor.
+     */
+    String recognize(ByteString audio, AudioFormat format);
+
+    /**
+     * Opens a streaming recognition session. Results are reported with end times relative to
+     * the first audio byte sent on the returned stream.
+     */
+    Stream openStream(AudioFormat format, StreamListener listener);
+
+    /**
+     * Client side of one open recognition stream. Not thread-safe; callers serialize sends.
+     */
+    interface Stream {
+        void send(ByteString audio);
+
+        void closeSend();
+    }
+
+    interface StreamListener {
+        void onResult(StreamingTranscript transcript);
+
+        /**
+         * The engine ended the stream because it reached its maximum duration. The caller may
+         * continue on a new stream.
+         */
+        void onExpired();
+
+        void onError(Throwable t);
+
+        void onComplete();
+    }
+}
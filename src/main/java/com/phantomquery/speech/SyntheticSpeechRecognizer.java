@@ -0,0 +1,177 @@
+package com.phantomquery.speech;
+
+import com.google.protobuf.ByteString;
+import com.phantomquery.model.StreamingTranscript;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sound.sampled.AudioFormat;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * In-process engine for offline capacity testing. Transcripts are a pure function of the audio
+ * (or a fixed text when {@code speech.synthetic.transcript} is set), and every result is delivered
+ * after a configurable latency, so pipeline overhead can be measured without cloud variance.
+ */
+@Component
+@ConditionalOnProperty(name = "speech.engine", havingValue = "synthetic")
+public class SyntheticSpeechRecognizer implements SpeechRecognizer {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticSpeechRecognizer.class);
+
+    private static final String[] VOCABULARY = {
+        "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+        "india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa"
+    };
+    // One synthetic word per this much audio
+    private static final long MILLIS_PER_WORD = 400;
+
+    private final long latencyMs;
+    private final long interimIntervalMs;
+    private final long utteranceMs;
+    private final String fixedTranscript;
+    private final ScheduledExecutorService scheduler;
+
+    public SyntheticSpeechRecognizer(@Value("${speech.synthetic.latency-ms:50}") long latencyMs,
+                                     @Value("${speech.synthetic.interim-interval-ms:500}") long interimIntervalMs,
+                                     @Value("${speech.synthetic.utterance-ms:3000}") long utteranceMs,
+                                     @Value("${speech.synthetic.transcript:}") String fixedTranscript) {
+        this.latencyMs = latencyMs;
+        this.interimIntervalMs = interimIntervalMs;
+        this.utteranceMs = utteranceMs;
+        this.fixedTranscript = fixedTranscript;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "synthetic-recognizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Synthetic speech recognizer enabled - latency: {} ms, interim every {} ms, utterances of {} ms",
+                    latencyMs, interimIntervalMs, utteranceMs);
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String getName() {
+        return "synthetic";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public String recognize(ByteString audio, AudioFormat format) {
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Recognition interrupted", e);
+            }
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(audio.asReadOnlyByteBuffer());
+        return transcriptFor(checksum.getValue(), audio.size() / bytesPerMilli(format));
+    }
+
+    @Override
+    public Stream openStream(AudioFormat format, StreamListener listener) {
+        return new SyntheticStream(bytesPerMilli(format), listener);
+    }
+
+    private String transcriptFor(long seed, long durationMs) {
+        if (!fixedTranscript.isBlank()) {
+            return fixedTranscript;
+        }
+        long words = durationMs / MILLIS_PER_WORD;
+        if (words == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (long i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(VOCABULARY[(int) ((seed + i * 7) % VOCABULARY.length)]);
+        }
+        return text.toString();
+    }
+
+    private static long bytesPerMilli(AudioFormat format) {
+        long bytesPerSecond = (long) format.getSampleRate() * format.getChannels() * ((format.getSampleSizeInBits() + 7) / 8);
+        return Math.max(1, bytesPerSecond / 1000);
+    }
+
+    /**
+     * Emits an interim result every interim interval and a final result every utterance length,
+     * scheduled after the configured latency on a single thread so results stay ordered.
+     */
+    private final class SyntheticStream implements Stream {
+        private final long bytesPerMilli;
+        private final StreamListener listener;
+        private final CRC32 utteranceChecksum = new CRC32();
+        private long utteranceStartBytes;
+        private long lastInterimBytes;
+        private long streamBytes;
+        private boolean closed;
+
+        SyntheticStream(long bytesPerMilli, StreamListener listener) {
+            this.bytesPerMilli = bytesPerMilli;
+            this.listener = listener;
+        }
+
+        @Override
+        public void send(ByteString audio) {
+            if (closed) {
+                throw new IllegalStateException("Stream already closed");
+            }
+            utteranceChecksum.update(audio.asReadOnlyByteBuffer());
+            streamBytes += audio.size();
+
+            long utteranceBytes = streamBytes - utteranceStartBytes;
+            if (utteranceBytes >= utteranceMs * bytesPerMilli) {
+                emit(true);
+            } else if (streamBytes - lastInterimBytes >= interimIntervalMs * bytesPerMilli) {
+                emit(false);
+            }
+        }
+
+        @Override
+        public void closeSend() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (streamBytes > utteranceStartBytes) {
+                emit(true);
+            }
+            scheduler.schedule(listener::onComplete, latencyMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void emit(boolean isFinal) {
+            long durationMs = (streamBytes - utteranceStartBytes) / bytesPerMilli;
+            String text = transcriptFor(utteranceChecksum.getValue(), durationMs);
+            Duration endTime = Duration.ofMillis(streamBytes / bytesPerMilli);
+            StreamingTranscript transcript = new StreamingTranscript(text, isFinal, isFinal ? 0f : 0.5f, endTime);
+
+            lastInterimBytes = streamBytes;
+            if (isFinal) {
+                utteranceStartBytes = streamBytes;
+                utteranceChecksum.reset();
+            }
+            scheduler.schedule(() -> listener.onResult(transcript), latencyMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.phantomquery.websocket;
+
+/**
+ * Messages browsers and the Python client send over the simple WebSocket, one record per
+ * {@code type}. Audio fields arrive base64-encoded and are already decoded here.
+ */
+public sealed interface ClientMessage {
+
+    record Connection(String message) implements ClientMessage {
+    }
+
+    record SpeechStart() implements ClientMessage {
+    }
+
+    /**
+     * One chunk of the utterance in progress.
+     */
+    record SpeechData(byte[] audio) implements ClientMessage {
+    }
+
+    record SpeechEnd() implements ClientMessage {
+    }
+
+    /**
+     * One complete speech segment; {@code clientId} is null when the sender did not name itself.
+     */
+    record Speech(byte[] audioData, String clientId) implements ClientMessage {
+    }
+
+    record SendMessage(String content, String conversationId, boolean stream) implements ClientMessage {
+    }
+
+    record ClearInput() implements ClientMessage {
+    }
+
+    record Unknown(String type) implements ClientMessage {
+    }
+}
@@ -0,0 +1,107 @@
+package com.phantomquery.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes the simple WebSocket protocol without building JSON trees.
+ *
+ * Incoming frames are read with a single streaming pass: the top-level fields are picked up in
+ * whatever order they arrive, base64 audio is decoded straight from the parser's buffer into a
+ * byte array, and unknown fields are skipped. An object or array where a known field belongs
+ * is rejected rather than read member by member. Outgoing messages are written by an
+ * {@link ObjectWriter} built once per message record. Thread-safe.
+ */
+public class MessageCodec {
+
+    private static final Set<String> KNOWN_FIELDS =
+            Set.of("type", "message", "audio", "audioData", "clientId", "content", "conversationId", "stream");
+
+    private final JsonFactory jsonFactory;
+    private final Map<Class<?>, ObjectWriter> writers = new HashMap<>();
+
+    public MessageCodec(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+        for (Class<?> type : ServerMessage.class.getPermittedSubclasses()) {
+            writers.put(type, objectMapper.writerFor(type));
+        }
+    }
+
+    public String write(ServerMessage message) throws JsonProcessingException {
+        return writers.get(message.getClass()).writeValueAsString(message);
+    }
+
+    public ClientMessage read(String payload) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            String type = null;
+            String text = null;
+            byte[] audio = null;
+            String clientId = null;
+            String content = null;
+            String conversationId = null;
+            boolean stream = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                if (value.isStructStart()) {
+                    // Skip whole, so its members are not read as this message's own fields
+                    parser.skipChildren();
+                    if (KNOWN_FIELDS.contains(field)) {
+                        throw new JsonParseException(parser, "Field " + field + " must not be an object or array");
+                    }
+                    continue;
+                }
+                switch (field) {
+                    case "type" -> type = parser.getValueAsString();
+                    case "message" -> text = parser.getValueAsString();
+                    // "speech_data" calls it audio, "speech" calls it audioData
+                    case "audio", "audioData" -> audio = parser.getBinaryValue();
+                    case "clientId" -> clientId = parser.getValueAsString();
+                    case "content" -> content = parser.getValueAsString();
+                    case "conversationId" -> conversationId = parser.getValueAsString();
+                    case "stream" -> stream = parser.getValueAsBoolean(false);
+                    default -> { }
+                }
+            }
+            if (type == null) {
+                throw new JsonParseException(parser, "Message has no type");
+            }
+
+            return switch (type) {
+                case "connection" -> new ClientMessage.Connection(text);
+                case "speech_start" -> new ClientMessage.SpeechStart();
+                case "speech_data" -> new ClientMessage.SpeechData(require(parser, audio, "audio"));
+                case "speech_end" -> new ClientMessage.SpeechEnd();
+                case "speech" -> new ClientMessage.Speech(require(parser, audio, "audioData"), clientId);
+                case "send_message" -> new ClientMessage.SendMessage(require(parser, content, "content"),
+                        require(parser, conversationId, "conversationId"), stream);
+                case "clear_input" -> new ClientMessage.ClearInput();
+                default -> new ClientMessage.Unknown(type);
+            };
+        }
+    }
+
+    private static <T> T require(JsonParser parser, T value, String field) throws JsonParseException {
+        if (value == null) {
+            throw new JsonParseException(parser, "Missing field: " + field);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,46 @@
+package com.phantomquery.websocket;
+
+/**
+ * Messages sent to clients over the simple WebSocket. Each record carries its wire {@code type}
+ * as the first component so it serializes to exactly the JSON the clients expect.
+ */
+public sealed interface ServerMessage {
+
+    String type();
+
+    record ClientId(String type, String clientId) implements ServerMessage {
+        public ClientId(String clientId) {
+            this("client_id", clientId);
+        }
+    }
+
+    record Transcription(String type, String text, boolean append) implements ServerMessage {
+        public Transcription(String text, boolean append) {
+            this("transcription", text, append);
+        }
+    }
+
+    record AiResponse(String type, String content) implements ServerMessage {
+        public AiResponse(String content) {
+            this("ai_response", content);
+        }
+    }
+
+    record AiResponseDelta(String type, String content) implements ServerMessage {
+        public AiResponseDelta(String content) {
+            this("ai_response_delta", content);
+        }
+    }
+
+    record InputCleared(String type) implements ServerMessage {
+        public InputCleared() {
+            this("input_cleared");
+        }
+    }
+
+    record ErrorMessage(String type, String message) implements ServerMessage {
+        public ErrorMessage(String message) {
+            this("error", message);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.phantomquery.websocket;
+
+import io.micrometer.core.instrument.Timer;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous outbound queue for one WebSocket session. Producers (recognizer callbacks, OpenAI
+ * streams, the transport thread) only enqueue and return; a sender thread from a shared pool
+ * drains the queue, so one slow browser never delays delivery to another and sends to a session
+ * are never concurrent.
+ *
+ * The queue is bounded by a byte budget. When a client falls behind, the {@link SlowConsumerPolicy}
+ * decides what gives: interim messages (partial transcripts, response deltas) can be coalesced or
+ * dropped because a later message supersedes them, while final messages are never dropped; a
+ * client that cannot keep up even with those is disconnected. A send that takes longer than the
+ * send time limit also disconnects the session; {@link #checkStalled()} catches a stalled send even
+ * when nothing more is queued.
+ *
+ * On a standard WebSocket session messages go out through the container's asynchronous send, so
+ * a sender thread is only held while a message is handed over, never while a slow client reads
+ * it. Other sessions fall back to a blocking send on the sender thread.
+ *
+ * Each delivered message records how long it waited in the queue and how long the send itself
+ * took, in timers shared by all sessions.
+ */
+public class SessionOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionOutbox.class);
+
+    private record Outbound(TextMessage message, int size, boolean interim, String coalesceKey, long queuedAt) {
+    }
+
+    private final WebSocketSession session;
+    private final Executor sender;
+    private final int maxQueuedBytes;
+    private final long sendTimeLimitMs;
+    private final SlowConsumerPolicy policy;
+    private final Timer queueTimer;
+    private final Timer sendTimer;
+    // Null when the session is not backed by a standard WebSocket session
+    private final RemoteEndpoint.Async asyncRemote;
+
+    // Guarded by this
+    private final ArrayDeque<Outbound> queue = new ArrayDeque<>();
+    private int queuedBytes;
+    private boolean draining;
+    private boolean closed;
+
+    // Start of the send in progress, 0 when idle
+    private volatile long sendStartedAt;
+
+    private long sentCount;
+    private long droppedCount;
+    private long coalescedCount;
+
+    public SessionOutbox(WebSocketSession session, Executor sender, int maxQueuedBytes,
+                         long sendTimeLimitMs, SlowConsumerPolicy policy, Timer queueTimer, Timer sendTimer) {
+        this.session = session;
+        this.sender = sender;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.policy = policy;
+        this.queueTimer = queueTimer;
+        this.sendTimer = sendTimer;
+        this.asyncRemote = asyncRemote(session, sendTimeLimitMs);
+    }
+
+    private static RemoteEndpoint.Async asyncRemote(WebSocketSession session, long sendTimeLimitMs) {
+        if (!(session instanceof NativeWebSocketSession nativeSession)) {
+            return null;
+        }
+        jakarta.websocket.Session standard = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+        if (standard == null) {
+            return null;
+        }
+        RemoteEndpoint.Async remote = standard.getAsyncRemote();
+        // The container fails the send itself once the limit passes
+        remote.setSendTimeout(sendTimeLimitMs);
+        return remote;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    /**
+     * Queues a message that must be delivered.
+     */
+    public void send(String payload) {
+        offer(payload, false, null);
+    }
+
+    /**
+     * Queues a message that a later message supersedes. Under {@link SlowConsumerPolicy#COALESCE}
+     * a still-queued message with the same key is replaced; under pressure it may be dropped.
+     */
+    public void sendInterim(String payload, String coalesceKey) {
+        offer(payload, true, coalesceKey);
+    }
+
+    private void offer(String payload, boolean interim, String coalesceKey) {
+        if (isSendStalled()) {
+            disconnect("send blocked for more than " + sendTimeLimitMs + " ms");
+            return;
+        }
+        // Payloads are JSON, mostly ASCII; the character count is a close, cheap estimate
+        Outbound outbound = new Outbound(new TextMessage(payload), payload.length(), interim, coalesceKey,
+                System.nanoTime());
+        boolean overflow = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (interim && coalesceKey != null && policy == SlowConsumerPolicy.COALESCE) {
+                coalesce(coalesceKey);
+            }
+            if (queuedBytes + outbound.size() > maxQueuedBytes) {
+                if (policy != SlowConsumerPolicy.DISCONNECT) {
+                    dropInterim(outbound.size());
+                    if (interim && queuedBytes + outbound.size() > maxQueuedBytes) {
+                        // Only final messages are queued; this one will be superseded anyway
+                        droppedCount++;
+                        return;
+                    }
+                }
+                // A single oversized message still goes out to an idle client
+                overflow = queuedBytes + outbound.size() > maxQueuedBytes && !queue.isEmpty();
+            }
+            if (!overflow) {
+                queue.add(outbound);
+                queuedBytes += outbound.size();
+                if (!draining) {
+                    draining = true;
+                    sender.execute(this::drain);
+                }
+            }
+        }
+        if (overflow) {
+            disconnect("outbound queue exceeded " + maxQueuedBytes + " bytes");
+        }
+    }
+
+    private void coalesce(String coalesceKey) {
+        Iterator<Outbound> it = queue.iterator();
+        while (it.hasNext()) {
+            Outbound queued = it.next();
+            if (queued.interim() && coalesceKey.equals(queued.coalesceKey())) {
+                it.remove();
+                queuedBytes -= queued.size();
+                coalescedCount++;
+            }
+        }
+    }
+
+    private void dropInterim(int needed) {
+        Iterator<Outbound> it = queue.iterator();
+        while (it.hasNext() && queuedBytes + needed > maxQueuedBytes) {
+            Outbound queued = it.next();
+            if (queued.interim()) {
+                it.remove();
+                queuedBytes -= queued.size();
+                droppedCount++;
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Outbound next;
+            synchronized (this) {
+                next = queue.poll();
+                if (next == null || closed) {
+                    draining = false;
+                    return;
+                }
+                queuedBytes -= next.size();
+            }
+            sendStartedAt = System.currentTimeMillis();
+            long sendStartedNanos = System.nanoTime();
+            queueTimer.record(sendStartedNanos - next.queuedAt(), TimeUnit.NANOSECONDS);
+            if (asyncRemote != null) {
+                // Draining continues from the completion callback; the thread goes back to the pool
+                sendAsync(next, sendStartedNanos);
+                return;
+            }
+            try {
+                session.sendMessage(next.message());
+                sendTimer.record(System.nanoTime() - sendStartedNanos, TimeUnit.NANOSECONDS);
+                synchronized (this) {
+                    sentCount++;
+                }
+            } catch (IOException | IllegalStateException e) {
+                logger.error("Error sending message to client {}: {}", session.getId(), e.getMessage());
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+    }
+
+    private void sendAsync(Outbound next, long sendStartedNanos) {
+        try {
+            asyncRemote.sendText(next.message().getPayload(), result -> sent(result, sendStartedNanos));
+        } catch (IllegalStateException e) {
+            sent(new SendResult(e), sendStartedNanos);
+        }
+    }
+
+    private void sent(SendResult result, long sendStartedNanos) {
+        sendStartedAt = 0;
+        if (result.isOK()) {
+            sendTimer.record(System.nanoTime() - sendStartedNanos, TimeUnit.NANOSECONDS);
+            synchronized (this) {
+                sentCount++;
+            }
+        } else {
+            logger.error("Error sending message to client {}: {}", session.getId(), result.getException().getMessage());
+        }
+        // Not inline: the container may complete a send on the calling thread
+        sender.execute(this::drain);
+    }
+
+    /**
+     * Disconnects the session if a send has been in progress for longer than the send time limit.
+     * Called periodically, so a client that stalls with nothing more queued is still dropped.
+     */
+    public void checkStalled() {
+        if (isSendStalled()) {
+            disconnect("send blocked for more than " + sendTimeLimitMs + " ms");
+        }
+    }
+
+    private boolean isSendStalled() {
+        long startedAt = sendStartedAt;
+        return startedAt != 0 && System.currentTimeMillis() - startedAt > sendTimeLimitMs;
+    }
+
+    private void disconnect(String reason) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            droppedCount += queue.size();
+            queue.clear();
+            queuedBytes = 0;
+        }
+        logger.warn("Disconnecting slow client {}: {}", session.getId(), reason);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            logger.error("Error closing session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Discards anything still queued once the session is gone.
+     */
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        queuedBytes = 0;
+    }
+
+    public synchronized int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queuedMessages", queue.size());
+        stats.put("queuedBytes", queuedBytes);
+        stats.put("maxQueuedBytes", maxQueuedBytes);
+        stats.put("sent", sentCount);
+        stats.put("dropped", droppedCount);
+        stats.put("coalesced", coalescedCount);
+        stats.put("policy", policy.name());
+        stats.put("sending", sendStartedAt != 0);
+        return stats;
+    }
+}
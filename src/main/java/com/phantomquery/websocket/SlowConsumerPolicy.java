@@ -0,0 +1,15 @@
+package com.phantomquery.websocket;
+
+/**
+ * What a {@link SessionOutbox} does when a client reads slower than messages are produced for it
+ * and its byte budget runs out. Each policy falls back to the next, harsher step when the lighter
+ * one does not free enough room.
+ */
+public enum SlowConsumerPolicy {
+    /** Replace superseded queued messages with the newest one, then drop interim messages, then disconnect. */
+    COALESCE,
+    /** Drop queued and incoming interim messages, then disconnect. */
+    DROP_INTERIM,
+    /** Disconnect as soon as the budget is exceeded. */
+    DISCONNECT
+}
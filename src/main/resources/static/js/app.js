@@ -58,12 +58,31 @@ function ChatApp() {
                         textareaRef.current.style.height = 'auto';
                         textareaRef.current.style.height = (textareaRef.current.scrollHeight) + 'px';
                     }
+                } else if (data.type === 'ai_response_delta') {
+                    // Grow the in-progress assistant message token by token
+                    setMessages(prev => {
+                        const last = prev[prev.length - 1];
+                        if (last && last.role === 'assistant' && last.streaming) {
+                            return [...prev.slice(0, -1), { ...last, content: last.content + data.content }];
+                        }
+                        return [...prev, {
+                            role: 'assistant',
+                            content: data.content,
+                            streaming: true,
+                            timestamp: new Date()
+                        }];
+                    });
                 } else if (data.type === 'ai_response') {
-                    setMessages(prev => [...prev, {
-                        role: 'assistant',
-                        content: data.content,
-                        timestamp: new Date()
-                    }]);
+                    // The final response replaces any streamed partial message
+                    setMessages(prev => {
+                        const last = prev[prev.length - 1];
+                        const base = last && last.role === 'assistant' && last.streaming ? prev.slice(0, -1) : prev;
+                        return [...base, {
+                            role: 'assistant',
+                            content: data.content,
+                            timestamp: new Date()
+                        }];
+                    });
                 } else if (data.type === 'input_cleared') {
                     setInputValue('');
                     if (textareaRef.current) {
@@ -120,11 +139,13 @@ function ChatApp() {
     const loadConversations = async () => {
         try {
             const response = await fetch('/api/conversations');
+            // Only the latest page; older conversations are behind data.nextCursor
             const data = await response.json();
-            setConversations(data);
-            if (data.length > 0 && !currentConversationId) {
-                setCurrentConversationId(data[0].id);
-                loadMessages(data[0].id);
+            const latest = data.items;
+            setConversations(latest);
+            if (latest.length > 0 && !currentConversationId) {
+                setCurrentConversationId(latest[0].id);
+                loadMessages(latest[0].id);
             }
         } catch (error) {
             console.error('Error loading conversations:', error);
@@ -135,7 +156,7 @@ function ChatApp() {
         try {
             const response = await fetch(`/api/conversations/${conversationId}/messages`);
             const data = await response.json();
-            setMessages(data.map(msg => ({
+            setMessages(data.items.map(msg => ({
                 ...msg,
                 timestamp: new Date(msg.timestamp)
             })));
@@ -180,7 +201,8 @@ function ChatApp() {
             const message = {
                 type: 'send_message',
                 content: inputValue,
-                conversationId: currentConversationId
+                conversationId: currentConversationId,
+                stream: true
             };
             wsRef.current.send(JSON.stringify(message));
             console.log('Sent message to server: ' + JSON.stringify(message));